@@ -1,4 +1,9 @@
-import java.util.Scanner;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
 
 /*
  * Auth: Dinh Vu
@@ -7,18 +12,62 @@ import java.util.Scanner;
  * The program will also be able to handle incorrect input.
  */
 public class AverageCalculator {
+    private static final double DEFAULT_RELATIVE_ERROR = 0.01;
+    // Below this many numbers starting the parallel work costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
     /*
      * Main method that call all the other seperated methods in this class
      * Seperated methods makes code much easier to read, maintain and eventuelly debugging.
-     * @param args not used !
+     * @param args a file to read the integers from, or "-" for standard input, instead of asking for them,
+     *             optionally after "--approximate" or "--approximate=error" to estimate the unique numbers
      */
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
+        if (args.length > 0) {
+            double relativeError = 0;
+            String source = args[args.length - 1];
+            for (int i = 0; i < args.length - 1; i++) {
+                if (args[i].equals("--approximate")) {
+                    relativeError = DEFAULT_RELATIVE_ERROR;
+                } else if (args[i].startsWith("--approximate=")) {
+                    try {
+                        relativeError = Double.parseDouble(args[i].substring("--approximate=".length()));
+                    } catch (NumberFormatException e) {
+                        relativeError = -1;
+                    }
+                    if (!(relativeError > 0 && relativeError < 1)) {
+                        System.out.println("Invalid input. The error must be a number between 0 and 1.");
+                        return;
+                    }
+                    if (relativeError < HyperLogLog.MIN_RELATIVE_ERROR) {
+                        System.out.println("Invalid input. The error must be at least "
+                                + HyperLogLog.MIN_RELATIVE_ERROR + ".");
+                        return;
+                    }
+                } else {
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+            printStatistics(source, relativeError);
+            return;
+        }
+        NumberReader reader = new NumberReader(System.in);
 
         System.out.println("\t**** Integers Calculator ****");
         System.out.println();
-        int count = readNumberOfIntegers(scanner);
-        int[] inputNumbers = readNumbersFromUser(count, scanner);
+        int count;
+        int[] inputNumbers;
+        try {
+            count = readNumberOfIntegers(reader);
+            inputNumbers = readNumbersFromUser(count, reader);
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the integers: " + e.getMessage());
+            return;
+        } catch (NoSuchElementException e) {
+            System.out.println("The input ended before all integers were entered.");
+            return;
+        }
         double average = averageCounter(inputNumbers);
         int numb = countNoRepeatedNumber(inputNumbers);
 
@@ -26,25 +75,79 @@ public class AverageCalculator {
         System.out.println("Out of those," + numb + " numbers appeared only once");
         System.out.println("The average value of the numbers is: " + average);
 
-        scanner.close();
+    }
+
+    /**
+     * Reads all integers from a file or standard input in a single pass, and prints statistics about them.
+     * The integers are not kept, so the input can be larger than the memory.
+     * Tokens that are not integers are skipped and counted, and the first of them is shown.
+     * With a relative error the distinct and unique numbers are estimated in a fixed amount of memory,
+     * for inputs with too many distinct numbers to count them exactly.
+     *
+     * @param source        The path of the file, or "-" for standard input
+     * @param relativeError The relative error of the estimates, or 0 to count exactly
+     */
+    public static void printStatistics(String source, double relativeError) {
+        IntStatistics statistics = relativeError > 0 ? new IntStatistics(relativeError) : new IntStatistics();
+        long invalid = 0;
+        MalformedNumberException firstInvalid = null;
+        try (InputStream in = "-".equals(source) ? System.in : new FileInputStream(source)) {
+            NumberReader reader = new NumberReader(in);
+            while (reader.hasNext()) {
+                try {
+                    statistics.accept(reader.nextInt());
+                } catch (MalformedNumberException e) {
+                    if (invalid++ == 0) {
+                        firstInvalid = e;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the integers: " + e.getMessage());
+            return;
+        }
 
+        System.out.println("Read " + statistics.getCount() + " integers");
+        if (invalid > 0) {
+            System.out.println("Skipped " + invalid + " invalid numbers, the first was: " + firstInvalid.getMessage());
+        }
+        if (statistics.getCount() == 0) {
+            return;
+        }
+        String about = statistics.isApproximate() ? "about " : "";
+        System.out.println("There were " + about + statistics.getDistinctCount() + " different numbers");
+        System.out.println("Out of those, " + about + statistics.getNoRepeatedCount() + " numbers appeared only once");
+        if (statistics.isApproximate()) {
+            System.out.printf("The number of different numbers has a relative standard error of %.2f%%%n",
+                    statistics.getRelativeError() * 100);
+        }
+        System.out.println("The sum of the numbers is: " + statistics.getSum());
+        System.out.println("The average value of the numbers is: " + statistics.getAverage());
+        System.out.println("The smallest number is: " + statistics.getMin());
+        System.out.println("The largest number is: " + statistics.getMax());
+        System.out.println("The variance of the numbers is: " + statistics.getVariance());
     }
 
     /**
      * Reads the number of integers to calculate from the user.
      *
-     * @param scanner the Scanner object used for user input
+     * @param reader the NumberReader used for user input
      * @return the number of integers to calculate
+     * @throws IOException            if the input cannot be read
+     * @throws NoSuchElementException if the input ends
      */
-    public static int readNumberOfIntegers(Scanner scanner) {
+    public static int readNumberOfIntegers(NumberReader reader) throws IOException {
 
         while (true) {
             System.out.printf("Enter the number of integers you want to calculate:");
-            if (scanner.hasNextInt()) {
-                return scanner.nextInt();
-            } else {
-                System.out.println("Invalid input. Please enter a valid integer.");
-                scanner.nextLine();
+            try {
+                int count = reader.nextInt();
+                if (count >= 0) {
+                    return count;
+                }
+                System.out.println("Invalid input. The number of integers cannot be negative.");
+            } catch (MalformedNumberException e) {
+                System.out.println(e.getMessage() + ". Please enter a valid integer.");
             }
         }
     }
@@ -52,11 +155,13 @@ public class AverageCalculator {
     /**
      * Reads the specified number of integers from the user.
      *
-     * @param count   The number of integers to read
-     * @param scanner Scanner object to read user input
+     * @param count  The number of integers to read
+     * @param reader NumberReader object to read user input
      * @return An array containing the entered integers
+     * @throws IOException            if the input cannot be read
+     * @throws NoSuchElementException if the input ends before all integers were read
      */
-    public static int[] readNumbersFromUser(int count, Scanner scanner) {
+    public static int[] readNumbersFromUser(int count, NumberReader reader) throws IOException {
 
         int[] numbers = new int[count];
 
@@ -64,13 +169,15 @@ public class AverageCalculator {
             int expectedNumber = i + 1;
             System.out.print("Enter number " + expectedNumber + ": ");
 
-            while (!scanner.hasNextInt()) {
-                System.out.println("Invalid input. Please enter a valid number.");
-                System.out.print("Enter number " + expectedNumber + ": ");
-                scanner.next();
+            while (true) {
+                try {
+                    numbers[i] = reader.nextInt();
+                    break;
+                } catch (MalformedNumberException e) {
+                    System.out.println(e.getMessage() + ". Please enter a valid number.");
+                    System.out.print("Enter number " + expectedNumber + ": ");
+                }
             }
-
-            numbers[i] = scanner.nextInt();
         }
 
         return numbers;
@@ -78,6 +185,8 @@ public class AverageCalculator {
 
     /**
      * Calculates the average value of the given numbers.
+     * Large arrays are summed on all processors: the array is split into parts, every thread sums
+     * its own parts, and the partial sums are added at the end.
      *
      * @param numbers An array of integers
      * @return The average value of the numbers
@@ -87,9 +196,14 @@ public class AverageCalculator {
         if (numbers.length == 0) {
             return 0;
         }
-        int sum = 0;
-        for (int number : numbers) {
-            sum += number;
+        // A long cannot overflow here, since an array holds less than 2^31 integers
+        long sum = 0;
+        if (numbers.length >= PARALLEL_THRESHOLD) {
+            sum = Arrays.stream(numbers).parallel().asLongStream().sum();
+        } else {
+            for (int number : numbers) {
+                sum += number;
+            }
         }
         return (double) sum / numbers.length;
 
@@ -97,24 +211,120 @@ public class AverageCalculator {
 
     /**
      * Counts the number of unique numbers in an array.
+     * Every number is counted once in an IntCountMap, so this takes linear time.
+     * Large arrays are counted on all processors with {@link #countNoRepeatedNumberParallel(int[])}.
      *
      * @param numbers An array of integers
      * @return The count of unique numbers in the array
      */
     public static int countNoRepeatedNumber(int[] numbers) {
-        int nonRepeatedNumber = 0;
-        for (int i = 0; i < numbers.length; i++) {
-            boolean isUnique = true;
-            for (int j = 0; j < numbers.length; j++) {
-                if (i != j && numbers[i] == numbers[j]) {
-                    isUnique = false;
-                    break;
-                }
+        if (numbers.length >= PARALLEL_THRESHOLD) {
+            return countNoRepeatedNumberParallel(numbers);
+        }
+        return countNoRepeatedNumberSequential(numbers);
+    }
+
+    /**
+     * Counts the number of unique numbers in an array on the calling thread.
+     *
+     * @param numbers An array of integers
+     * @return The count of unique numbers in the array
+     */
+    private static int countNoRepeatedNumberSequential(int[] numbers) {
+        return countNoRepeatedNumber(numbers, 0, numbers.length);
+    }
+
+    /**
+     * Counts the number of unique numbers in a range of an array.
+     *
+     * @param numbers An array of integers
+     * @param from    The first position to count, inclusive
+     * @param to      The end of the range, exclusive
+     * @return The count of unique numbers in the range
+     */
+    private static int countNoRepeatedNumber(int[] numbers, int from, int to) {
+        IntCountMap counts = new IntCountMap();
+        for (int i = from; i < to; i++) {
+            counts.increment(numbers[i]);
+        }
+        return counts.countKeysSeen(1);
+    }
+
+    /**
+     * Counts the number of unique numbers in an array on all processors.
+     * The array is split into one range per processor, and every thread moves the numbers of its range
+     * into shards picked by their hash, in a copy of the array. Equal numbers always land in the same shard,
+     * so every shard is then counted on its own with its own IntCountMap, and the counts are simply added.
+     * Every number is read and hashed a fixed number of times however many processors there are,
+     * and the threads never write to the same place, so they never wait for each other.
+     * The price is the copy, which takes as much memory as the array.
+     *
+     * @param numbers An array of integers
+     * @return The count of unique numbers in the array
+     */
+    public static int countNoRepeatedNumberParallel(int[] numbers) {
+        int parts = Runtime.getRuntime().availableProcessors();
+        if (parts == 1) {
+            return countNoRepeatedNumberSequential(numbers);
+        }
+        int length = numbers.length;
+
+        // Every range counts how many of its numbers go to every shard
+        int[][] shardSizes = new int[parts][parts];
+        IntStream.range(0, parts).parallel().forEach(part -> {
+            for (int i = rangeStart(length, part, parts); i < rangeStart(length, part + 1, parts); i++) {
+                shardSizes[part][shardOf(numbers[i], parts)]++;
             }
-            if (isUnique) {
-                nonRepeatedNumber++;
+        });
+
+        // The shards follow each other in the copy, and within a shard the ranges follow each other
+        int[][] offsets = new int[parts][parts];
+        int[] shardStarts = new int[parts + 1];
+        int offset = 0;
+        for (int shard = 0; shard < parts; shard++) {
+            shardStarts[shard] = offset;
+            for (int part = 0; part < parts; part++) {
+                offsets[part][shard] = offset;
+                offset += shardSizes[part][shard];
             }
         }
-        return nonRepeatedNumber;
+        shardStarts[parts] = offset;
+
+        int[] sharded = new int[length];
+        IntStream.range(0, parts).parallel().forEach(part -> {
+            int[] next = offsets[part];
+            for (int i = rangeStart(length, part, parts); i < rangeStart(length, part + 1, parts); i++) {
+                sharded[next[shardOf(numbers[i], parts)]++] = numbers[i];
+            }
+        });
+
+        return IntStream.range(0, parts)
+                .parallel()
+                .map(shard -> countNoRepeatedNumber(sharded, shardStarts[shard], shardStarts[shard + 1]))
+                .sum();
+    }
+
+    /**
+     * Returns where a range starts when an array is split into ranges of nearly equal length.
+     *
+     * @param length The length of the array
+     * @param part   The range, or the number of ranges for the end of the array
+     * @param parts  The number of ranges
+     * @return The position where the range starts
+     */
+    private static int rangeStart(int length, int part, int parts) {
+        return (int) ((long) length * part / parts);
+    }
+
+    /**
+     * Returns the shard of a number.
+     * The shard is picked by the high bits of the hash, since the map uses the low bits for its slots.
+     *
+     * @param number The number
+     * @param shards The number of shards
+     * @return The shard of the number
+     */
+    private static int shardOf(int number, int shards) {
+        return (int) (((IntCountMap.hash(number) & 0xFFFFFFFFL) * shards) >>> 32);
     }
 }
@@ -0,0 +1,149 @@
+/**
+ * Estimates how many distinct integers have been added, in a fixed amount of memory.
+ * Every integer is hashed to 64 bits. The first bits of the hash pick one of m registers,
+ * and the register remembers the longest run of leading zeros seen in the rest of the hash.
+ * Long runs are rare, so together the registers tell roughly how many distinct hashes there were.
+ * <p>
+ * The relative standard error is about 1.04 / sqrt(m), and every register takes one byte,
+ * so an error of 1% takes 16 KB whether a thousand or a billion integers are added.
+ * At most 2^18 registers are used, so an error below {@link #MIN_RELATIVE_ERROR} cannot be met
+ * and is rejected. A larger error than 26% still gets 16 registers, which is then better than asked.
+ * Two sketches with the same number of registers can be merged, which gives the same sketch
+ * as adding the integers of both to one, so workers can each fill their own and combine them at the end.
+ */
+public class HyperLogLog {
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    /**
+     * The smallest relative standard error a sketch can have, with the most registers.
+     */
+    public static final double MIN_RELATIVE_ERROR = 1.04 / Math.sqrt(1 << MAX_PRECISION);
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Constructs an empty HyperLogLog with enough registers for the specified relative error.
+     *
+     * {@link #getRelativeError()} tells the error the sketch actually has.
+     *
+     * @param relativeError The relative standard error wanted, for example 0.01 for 1%
+     * @throws IllegalArgumentException if the relative error is not below 1,
+     *                                  or smaller than {@link #MIN_RELATIVE_ERROR}
+     */
+    public HyperLogLog(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("Invalid relative error: " + relativeError);
+        }
+        double registersNeeded = Math.pow(1.04 / relativeError, 2);
+        // The tolerance keeps MIN_RELATIVE_ERROR itself from asking for one bit more because of rounding
+        int bits = (int) Math.ceil(Math.log(registersNeeded) / Math.log(2) - 1e-9);
+        if (bits > MAX_PRECISION) {
+            throw new IllegalArgumentException("A relative error of " + relativeError
+                    + " cannot be met, the smallest possible is " + MIN_RELATIVE_ERROR);
+        }
+        this.precision = Math.max(MIN_PRECISION, bits);
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Spreads the bits of an integer over 64 bits, with the finalizer of MurmurHash3.
+     * Different integers always get different hashes.
+     *
+     * @param value The integer
+     * @return The 64 bit hash of the integer
+     */
+    static long hash64(int value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Adds an integer to the sketch.
+     *
+     * @param value The integer
+     */
+    public void add(int value) {
+        long hash = hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        // The bit below the register bits ends the run, so the rank fits the remaining bits
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds all integers of another sketch to this one.
+     *
+     * @param other The sketch to merge, with the same relative error
+     * @throws IllegalArgumentException if the sketches have a different number of registers
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with " + other.registers.length
+                    + " and " + registers.length + " registers");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    /**
+     * Estimates the number of distinct integers added.
+     * While many registers are still empty, the estimate is taken from the number of empty registers,
+     * which is more accurate for small counts.
+     *
+     * @return The estimated number of distinct integers
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int empty = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                empty++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && empty > 0) {
+            estimate = m * Math.log((double) m / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns the relative standard error of the estimates of this sketch.
+     *
+     * @return The relative standard error
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * Returns the constant that corrects the bias of the raw estimate.
+     *
+     * @param m The number of registers
+     * @return The correction
+     */
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
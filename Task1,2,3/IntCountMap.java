@@ -0,0 +1,187 @@
+/**
+ * Counts how many times every int value has been seen, without boxing the values.
+ * The values and their counts are kept in two arrays with open addressing and linear probing,
+ * so counting a value costs a few array reads and no allocation.
+ * A slot is free when its count is 0, since every stored value has been seen at least once.
+ * The counts are longs, so a value can be counted more than 2^31 times in a long stream without
+ * its count wrapping around to a negative number or to 0, which would free its slot.
+ * The arrays double when they are three quarters full, so the memory used follows the number
+ * of distinct values and not the number of values counted.
+ */
+public class IntCountMap {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private int[] keys;
+    private long[] counts;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * Constructs an empty IntCountMap.
+     */
+    public IntCountMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty IntCountMap with room for the specified number of distinct values
+     * before it has to grow.
+     *
+     * @param expectedSize The number of distinct values expected
+     */
+    public IntCountMap(int expectedSize) {
+        long needed = Math.max((long) expectedSize * 4 / 3 + 1, DEFAULT_CAPACITY);
+        int capacity = (int) Math.min(Long.highestOneBit(needed - 1) << 1, MAX_CAPACITY);
+        allocate(capacity);
+    }
+
+    /**
+     * Spreads the bits of a value so that nearby values land in different slots.
+     * The low bits pick the slot, and the high bits are left for callers that split values into shards.
+     *
+     * @param key The value
+     * @return The mixed hash of the value
+     */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Counts one more occurrence of a value.
+     *
+     * @param key The value seen
+     * @return The number of times the value has been seen, including this time
+     */
+    public long increment(int key) {
+        return add(key, 1);
+    }
+
+    /**
+     * Counts several more occurrences of a value.
+     *
+     * @param key   The value seen
+     * @param count The number of occurrences, greater than 0
+     * @return The number of times the value has been seen, including these times
+     */
+    public long add(int key, long count) {
+        int slot = hash(key) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot] += count;
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        if (++size > resizeAt) {
+            grow();
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many times a value has been seen.
+     *
+     * @param key The value
+     * @return The number of times the value has been seen, or 0 if it has not been seen
+     */
+    public long get(int key) {
+        int slot = hash(key) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of distinct values seen.
+     *
+     * @return The number of distinct values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of distinct values that have been seen exactly the specified number of times.
+     *
+     * @param count The number of times
+     * @return The number of values seen exactly count times
+     */
+    public int countKeysSeen(long count) {
+        int keysSeen = 0;
+        for (long seen : counts) {
+            if (seen == count) {
+                keysSeen++;
+            }
+        }
+        return keysSeen;
+    }
+
+    /**
+     * Passes every value that has been seen and its count to the consumer, in no particular order.
+     *
+     * @param consumer Receives the values and their counts
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (counts[slot] != 0) {
+                consumer.accept(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    /**
+     * Receives the values of an IntCountMap with their counts.
+     */
+    public interface EntryConsumer {
+        /**
+         * Receives a value and its count.
+         *
+         * @param key   The value
+         * @param count The number of times the value has been seen
+         */
+        void accept(int key, long count);
+    }
+
+    /**
+     * Doubles the arrays and moves every value to its slot in the new arrays.
+     */
+    private void grow() {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Too many distinct values: " + size);
+        }
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        allocate(keys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Creates empty arrays with the specified number of slots.
+     *
+     * @param capacity The number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+}
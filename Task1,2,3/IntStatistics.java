@@ -0,0 +1,187 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Collects statistics about integers in a single pass, so the integers never have to be kept.
+ * The sum is exact however many integers are added: it is kept in a long, and whenever the long
+ * would overflow its value is moved into a BigInteger, which therefore changes very rarely.
+ * The variance is updated with Welford's method, which stays accurate for large sums.
+ * Numbers that appeared only once are counted with an IntCountMap, whose size follows the number
+ * of distinct integers and not the number of integers added.
+ * <p>
+ * When even that is too much, the statistics can be made approximate. The distinct integers are
+ * then estimated with a HyperLogLog and the integers that appeared once with a SingletonSketch,
+ * which take a fixed amount of memory. All other statistics stay exact.
+ */
+public class IntStatistics {
+    private long count;
+    private long sum;
+    private BigInteger overflowedSum = BigInteger.ZERO;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private double mean;
+    private double squaredDeviations;
+    private final IntCountMap counts;
+    private final HyperLogLog distinct;
+    private final SingletonSketch singletons;
+
+    /**
+     * Constructs IntStatistics that count the distinct integers exactly.
+     */
+    public IntStatistics() {
+        this.counts = new IntCountMap();
+        this.distinct = null;
+        this.singletons = null;
+    }
+
+    /**
+     * Constructs IntStatistics that estimate the distinct integers and the integers that appeared once
+     * with sketches, in a fixed amount of memory.
+     *
+     * @param relativeError The relative error wanted for the estimates, for example 0.01 for 1%
+     * @throws IllegalArgumentException if the relative error is not between 0 and 1
+     */
+    public IntStatistics(double relativeError) {
+        this.counts = null;
+        this.distinct = new HyperLogLog(relativeError);
+        this.singletons = new SingletonSketch(relativeError);
+    }
+
+    /**
+     * Adds an integer to the statistics.
+     *
+     * @param number The integer
+     */
+    public void accept(int number) {
+        long newSum = sum + number;
+        if (((sum ^ newSum) & (number ^ newSum)) < 0) {
+            overflowedSum = overflowedSum.add(BigInteger.valueOf(sum));
+            newSum = number;
+        }
+        sum = newSum;
+
+        count++;
+        min = Math.min(min, number);
+        max = Math.max(max, number);
+        double delta = number - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (number - mean);
+        if (counts != null) {
+            counts.increment(number);
+        } else {
+            distinct.add(number);
+            singletons.add(number);
+        }
+    }
+
+    /**
+     * Checks whether the distinct integers and the integers that appeared once are estimated.
+     *
+     * @return true if they are estimated with sketches
+     */
+    public boolean isApproximate() {
+        return counts == null;
+    }
+
+    /**
+     * Returns the relative standard error of the estimated number of distinct integers,
+     * which can be smaller than the error asked for.
+     *
+     * @return The relative standard error, or 0 if the statistics are exact
+     */
+    public double getRelativeError() {
+        return counts == null ? distinct.getRelativeError() : 0;
+    }
+
+    /**
+     * Returns the number of integers added.
+     *
+     * @return The number of integers
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the exact sum of the integers added.
+     *
+     * @return The sum, or 0 if no integers were added
+     */
+    public BigInteger getSum() {
+        return overflowedSum.add(BigInteger.valueOf(sum));
+    }
+
+    /**
+     * Returns the average value of the integers added, computed from the exact sum.
+     *
+     * @return The average value, or 0 if no integers were added
+     */
+    public double getAverage() {
+        if (count == 0) {
+            return 0;
+        }
+        if (overflowedSum.signum() == 0) {
+            return (double) sum / count;
+        }
+        return new BigDecimal(getSum()).divide(BigDecimal.valueOf(count), MathContext.DECIMAL64).doubleValue();
+    }
+
+    /**
+     * Returns the smallest integer added.
+     *
+     * @return The smallest integer
+     * @throws IllegalStateException if no integers were added
+     */
+    public int getMin() {
+        checkNotEmpty();
+        return min;
+    }
+
+    /**
+     * Returns the largest integer added.
+     *
+     * @return The largest integer
+     * @throws IllegalStateException if no integers were added
+     */
+    public int getMax() {
+        checkNotEmpty();
+        return max;
+    }
+
+    /**
+     * Returns the population variance of the integers added.
+     *
+     * @return The variance, or 0 if no integers were added
+     */
+    public double getVariance() {
+        return count == 0 ? 0 : squaredDeviations / count;
+    }
+
+    /**
+     * Returns how many different integers were added.
+     *
+     * @return The number of distinct integers, estimated if the statistics are approximate
+     */
+    public long getDistinctCount() {
+        return counts != null ? counts.size() : distinct.estimate();
+    }
+
+    /**
+     * Returns how many of the integers added appeared only once.
+     *
+     * @return The number of integers that appeared only once, estimated if the statistics are approximate
+     */
+    public long getNoRepeatedCount() {
+        return counts != null ? counts.countKeysSeen(1) : singletons.estimateSingletons();
+    }
+
+    /**
+     * Throws an exception if no integers have been added.
+     */
+    private void checkNotEmpty() {
+        if (count == 0) {
+            throw new IllegalStateException("No integers were added");
+        }
+    }
+}
@@ -1,16 +1,30 @@
-import java.util.Scanner; // Import the Scanner class
+import java.io.IOException;
+import java.util.NoSuchElementException;
 /*
  * Authors: Dinh Vu
  * Simple java class call "KnopToKph" that read data from user as knop and convert them into km/h
- * Program first created a scanner object.
+ * Program first created a NumberReader object, which reads decimals with the separator of the locale, like "12,5" in Swedish.
  * and then take the user input then convert them to the decided format and display the result. 
  */
 public class KnotToKph {
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in); // Created a Scanner object
+        NumberReader reader = new NumberReader(System.in); // Created a NumberReader object
         System.err.println("Mata in hastighet i knop:"); // Display the msg to the console
         System.err.println(); // print empty line
-        double knop = scanner.nextDouble(); // Read user input as double
+        double knop;
+        while (true) {
+            try {
+                knop = reader.nextDouble(); // Read user input as double
+                break;
+            } catch (MalformedNumberException e) {
+                // Tell where the input was wrong and ask again
+                System.err.println("Ogiltig hastighet \"" + e.getToken() + "\" p\u00e5 rad " + e.getLine()
+                        + ", kolumn " + e.getColumn() + ". F\u00f6rs\u00f6k igen:");
+            } catch (IOException | NoSuchElementException e) {
+                System.err.println("Ingen hastighet kunde l\u00e4sas.");
+                return;
+            }
+        }
         double kmph = knop * 1.852; // Convert method to km/h
         System.err.println(knop + " knop motsvarar" + " " + kmph + " km/h."); //Display the result in km/h
 
@@ -0,0 +1,53 @@
+/**
+ * Thrown by a NumberReader when a token is not a valid number.
+ * It tells which token it was and where it started, so the input can be fixed.
+ */
+public class MalformedNumberException extends NumberFormatException {
+    private static final long serialVersionUID = 1L;
+
+    private final String token;
+    private final int line;
+    private final long column;
+
+    /**
+     * Constructs a MalformedNumberException.
+     *
+     * @param kind   What the token should have been, for example "integer"
+     * @param token  The token that was read
+     * @param line   The line the token started on, counted from 1
+     * @param column The column the token started at in bytes, counted from 1
+     */
+    public MalformedNumberException(String kind, String token, int line, long column) {
+        super("Invalid " + kind + " \"" + token + "\" at line " + line + ", column " + column);
+        this.token = token;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Returns the token that was not a valid number.
+     *
+     * @return The token
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Returns the line the token started on.
+     *
+     * @return The line, counted from 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the column the token started at.
+     *
+     * @return The column in bytes, counted from 1
+     */
+    public long getColumn() {
+        return column;
+    }
+}
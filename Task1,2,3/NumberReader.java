@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads whitespace separated integers and decimal numbers from a stream, straight from its bytes.
+ * The stream is read through one large buffer and every token is copied into a second buffer that is
+ * reused, where it is turned into a number. Reading a number therefore allocates nothing, unlike Scanner
+ * which matches every token with a regular expression and creates a String for it.
+ * <p>
+ * Decimal numbers use the decimal separator of a locale, like Scanner does, so "3,5" is read in Swedish.
+ * A point is accepted as well, unless the locale uses it to group digits. Grouping separators are
+ * not accepted, and neither are NaN and Infinity.
+ * <p>
+ * A token that is not a valid number is skipped, and reported with a MalformedNumberException that
+ * tells where it started, so that the caller can decide whether to go on.
+ */
+public class NumberReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Integers up to 2^53 and powers of ten up to 10^22 are exact doubles, so one multiplication
+    // or division of them is rounded correctly
+    private static final long MAX_EXACT_DIGITS = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+    private static final int MAX_EXPONENT = 100_000;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final int decimalSeparator;
+    private final boolean acceptsPoint;
+    private int position;
+    private int limit;
+    private long bufferStart;
+    private int line = 1;
+    private long lineStart;
+    private byte[] token = new byte[32];
+    private int tokenLength;
+    private int tokenLine;
+    private long tokenColumn;
+
+    /**
+     * Constructs a NumberReader that reads from the specified stream, with the decimal separator
+     * of the default locale.
+     *
+     * @param in The stream to read from, which does not need to be buffered
+     */
+    public NumberReader(InputStream in) {
+        this(in, Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    /**
+     * Constructs a NumberReader that reads from the specified stream, with the decimal separator
+     * of the specified locale.
+     *
+     * @param in     The stream to read from, which does not need to be buffered
+     * @param locale The locale whose decimal separator is used
+     */
+    public NumberReader(InputStream in, Locale locale) {
+        this.in = in;
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        char separator = symbols.getDecimalSeparator();
+        // A separator outside ASCII takes more than one byte, so only the point can be used then
+        this.decimalSeparator = separator < 0x80 ? separator : '.';
+        this.acceptsPoint = symbols.getGroupingSeparator() != '.';
+    }
+
+    /**
+     * Checks whether there is another token before the end of the stream.
+     *
+     * @return true if there is another token
+     * @throws IOException if the stream cannot be read
+     */
+    public boolean hasNext() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            byte b = buffer[position];
+            if (!isWhitespace(b)) {
+                return true;
+            }
+            position++;
+            if (b == '\n') {
+                line++;
+                lineStart = bufferStart + position;
+            }
+        }
+    }
+
+    /**
+     * Reads the next token as an integer with an optional sign.
+     *
+     * @return The integer
+     * @throws IOException               if the stream cannot be read
+     * @throws NoSuchElementException    if there are no more tokens
+     * @throws MalformedNumberException if the token is not an integer or does not fit in an int,
+     *                                   in which case the token has been skipped
+     */
+    public int nextInt() throws IOException {
+        readToken();
+        int i = 0;
+        boolean negative = token[0] == '-';
+        if (negative || token[0] == '+') {
+            i++;
+        }
+        if (i == tokenLength) {
+            throw malformed("integer");
+        }
+        // Built as a negative number, which has room for Integer.MIN_VALUE
+        long value = 0;
+        for (; i < tokenLength; i++) {
+            int digit = token[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("integer");
+            }
+            value = value * 10 - digit;
+            if (value < Integer.MIN_VALUE) {
+                throw malformed("integer");
+            }
+        }
+        if (!negative && value == Integer.MIN_VALUE) {
+            throw malformed("integer");
+        }
+        return (int) (negative ? value : -value);
+    }
+
+    /**
+     * Reads the next token as a decimal number with an optional sign, decimal separator and exponent,
+     * such as "12", "-3,5" or "1.5e-3".
+     * Numbers with at most 18 significant digits and a small exponent are computed exactly from
+     * their digits, and other numbers are handed to Double.parseDouble.
+     *
+     * @return The number, rounded to the nearest double
+     * @throws IOException               if the stream cannot be read
+     * @throws NoSuchElementException    if there are no more tokens
+     * @throws MalformedNumberException if the token is not a decimal number, in which case the token has been skipped
+     */
+    public double nextDouble() throws IOException {
+        readToken();
+        int i = 0;
+        boolean negative = token[0] == '-';
+        if (negative || token[0] == '+') {
+            i++;
+        }
+        long digits = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        boolean exact = true;
+        for (; i < tokenLength; i++) {
+            int b = token[i];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (digits == 0 && b == '0') {
+                    exponent -= fraction ? 1 : 0;
+                } else if (significantDigits < MAX_SIGNIFICANT_DIGITS) {
+                    digits = digits * 10 + (b - '0');
+                    significantDigits++;
+                    exponent -= fraction ? 1 : 0;
+                } else {
+                    exact = false;
+                    exponent += fraction ? 0 : 1;
+                }
+            } else if (!fraction && isDecimalSeparator(b)) {
+                fraction = true;
+            } else if ((b == 'e' || b == 'E') && anyDigit) {
+                exponent += parseExponent(i + 1);
+                break;
+            } else {
+                throw malformed("number");
+            }
+        }
+        if (!anyDigit) {
+            throw malformed("number");
+        }
+
+        double value;
+        if (exact && digits < MAX_EXACT_DIGITS && Math.abs(exponent) < POWERS_OF_TEN.length) {
+            value = exponent < 0 ? digits / POWERS_OF_TEN[-exponent] : digits * POWERS_OF_TEN[exponent];
+        } else {
+            String text = new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1);
+            value = Math.abs(Double.parseDouble(text.replace((char) decimalSeparator, '.')));
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the exponent at the end of the current token, after its 'e'.
+     *
+     * @param start The position of the exponent in the token
+     * @return The exponent, limited to a size that still gives 0 or infinity
+     */
+    private int parseExponent(int start) {
+        int i = start;
+        boolean negative = i < tokenLength && token[i] == '-';
+        if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+            i++;
+        }
+        if (i == tokenLength) {
+            throw malformed("number");
+        }
+        int exponent = 0;
+        for (; i < tokenLength; i++) {
+            int digit = token[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("number");
+            }
+            exponent = Math.min(exponent * 10 + digit, MAX_EXPONENT);
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    /**
+     * Reads the next token into the token buffer and remembers where it started.
+     * The whitespace after the token is left for the next call.
+     *
+     * @throws IOException            if the stream cannot be read
+     * @throws NoSuchElementException if there are no more tokens
+     */
+    private void readToken() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more numbers");
+        }
+        tokenLine = line;
+        tokenColumn = bufferStart + position - lineStart + 1;
+        tokenLength = 0;
+        while (position < limit || fill()) {
+            byte b = buffer[position];
+            if (isWhitespace(b)) {
+                return;
+            }
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, tokenLength * 2);
+            }
+            token[tokenLength++] = b;
+            position++;
+        }
+    }
+
+    /**
+     * Creates the exception for a current token that is not a valid number.
+     *
+     * @param kind What the token should have been
+     * @return The exception
+     */
+    private MalformedNumberException malformed(String kind) {
+        String text = new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+        return new MalformedNumberException(kind, text, tokenLine, tokenColumn);
+    }
+
+    /**
+     * Reads more bytes from the stream into the buffer.
+     *
+     * @return false at the end of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        bufferStart += limit;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Checks whether a byte separates the whole and the fractional part of a decimal number.
+     *
+     * @param b The byte
+     * @return true if the byte is a decimal separator
+     */
+    private boolean isDecimalSeparator(int b) {
+        return b == decimalSeparator || (b == '.' && acceptsPoint);
+    }
+
+    /**
+     * Checks whether a byte separates tokens. Spaces and all control characters do.
+     *
+     * @param b The byte
+     * @return true if the byte is whitespace
+     */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Estimates how many integers appeared exactly once, in a bounded amount of memory.
+ * The sketch keeps an exact count for a random sample of the distinct integers, picked by their hash:
+ * an integer is in the sample while the first level bits of its hash are zero. When the sample grows
+ * past its capacity the level goes up, which drops about half of the sample, and an integer that is
+ * dropped can never qualify again. An integer in the sample was therefore counted from its first
+ * occurrence, so its count is exact, and every distinct integer had the same chance of 1 / 2^level
+ * to be sampled. The number of integers in the sample that appeared once, times 2^level, estimates
+ * the number of integers that appeared once in the whole stream.
+ * <p>
+ * With a capacity of k the relative error is roughly 1 / sqrt(k * f), where f is the share of the
+ * distinct integers that appeared once, so it is most accurate when singletons are common.
+ * Two sketches with the same capacity can be merged, since both keep the same integers at the same level.
+ */
+public class SingletonSketch {
+    private final int capacity;
+    private int level;
+    private IntCountMap sample;
+
+    /**
+     * Constructs an empty SingletonSketch with a sample large enough for the specified relative error,
+     * when most distinct integers appear once.
+     *
+     * @param relativeError The relative error wanted, for example 0.01 for 1%
+     * @throws IllegalArgumentException if the relative error is not between 0 and 1
+     */
+    public SingletonSketch(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("Invalid relative error: " + relativeError);
+        }
+        this.capacity = (int) Math.ceil(1 / (relativeError * relativeError));
+        this.sample = new IntCountMap(capacity);
+    }
+
+    /**
+     * Adds an integer to the sketch.
+     *
+     * @param value The integer
+     */
+    public void add(int value) {
+        if (isSampled(value)) {
+            sample.increment(value);
+            if (sample.size() > capacity) {
+                shrink();
+            }
+        }
+    }
+
+    /**
+     * Adds all integers of another sketch to this one. Both sketches are brought to the higher level,
+     * and the counts of integers sampled by both are added.
+     *
+     * @param other The sketch to merge, with the same relative error
+     * @throws IllegalArgumentException if the sketches have a different capacity
+     */
+    public void merge(SingletonSketch other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge sketches with a capacity of " + other.capacity
+                    + " and " + capacity);
+        }
+        level = Math.max(level, other.level);
+        IntCountMap merged = new IntCountMap(capacity);
+        IntCountMap.EntryConsumer keep = (value, count) -> {
+            if (isSampled(value)) {
+                merged.add(value, count);
+            }
+        };
+        sample.forEach(keep);
+        other.sample.forEach(keep);
+        sample = merged;
+        if (sample.size() > capacity) {
+            shrink();
+        }
+    }
+
+    /**
+     * Estimates the number of integers that appeared exactly once.
+     *
+     * @return The estimated number of integers that appeared once
+     */
+    public long estimateSingletons() {
+        return Math.round(Math.scalb((double) sample.countKeysSeen(1), level));
+    }
+
+    /**
+     * Checks whether an integer belongs to the sample at the current level.
+     *
+     * @param value The integer
+     * @return true if the first level bits of its hash are zero
+     */
+    private boolean isSampled(int value) {
+        return Long.numberOfLeadingZeros(HyperLogLog.hash64(value)) >= level;
+    }
+
+    /**
+     * Raises the level until the sample fits its capacity again.
+     */
+    private void shrink() {
+        while (sample.size() > capacity) {
+            level++;
+            IntCountMap kept = new IntCountMap(capacity);
+            sample.forEach((value, count) -> {
+                if (isSampled(value)) {
+                    kept.add(value, count);
+                }
+            });
+            sample = kept;
+        }
+    }
+}
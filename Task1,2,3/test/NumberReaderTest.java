@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the decimal separators of different locales, exponents, and the numbers that have to be
+ * rounded by Double.parseDouble instead of being computed from their digits.
+ */
+class NumberReaderTest {
+    private static final Locale SWEDISH = new Locale("sv", "SE");
+
+    @Test
+    void readsTheDecimalSeparatorOfTheLocale() throws IOException {
+        NumberReader reader = reader("3,5 -0,25", SWEDISH);
+        assertEquals(3.5, reader.nextDouble());
+        assertEquals(-0.25, reader.nextDouble());
+    }
+
+    @Test
+    void acceptsAPointUnlessTheLocaleGroupsDigitsWithIt() throws IOException {
+        assertEquals(2.25, reader("2.25", SWEDISH).nextDouble());
+        assertEquals(2.25, reader("2.25", Locale.US).nextDouble());
+
+        NumberReader german = reader("1.000 3,5", Locale.GERMANY);
+        MalformedNumberException e = assertThrows(MalformedNumberException.class, german::nextDouble);
+        assertEquals("1.000", e.getToken());
+        assertEquals(3.5, german.nextDouble());
+    }
+
+    @Test
+    void rejectsACommaWhereTheLocaleGroupsDigitsWithIt() throws IOException {
+        NumberReader reader = reader("1,000 7", Locale.US);
+        assertThrows(MalformedNumberException.class, reader::nextDouble);
+        assertEquals(7.0, reader.nextDouble());
+    }
+
+    @Test
+    void readsExponents() throws IOException {
+        NumberReader reader = reader("1e3 1.5E-3 -2e+2 2,5e2 0e7", SWEDISH);
+        assertEquals(1000.0, reader.nextDouble());
+        assertEquals(0.0015, reader.nextDouble());
+        assertEquals(-200.0, reader.nextDouble());
+        assertEquals(250.0, reader.nextDouble());
+        assertEquals(0.0, reader.nextDouble());
+    }
+
+    @Test
+    void roundsExponentsOutOfRangeToInfinityOrZero() throws IOException {
+        NumberReader reader = reader("1e400 -1e400 1e-400 1e99999999999 1e-99999999999", Locale.US);
+        assertEquals(Double.POSITIVE_INFINITY, reader.nextDouble());
+        assertEquals(Double.NEGATIVE_INFINITY, reader.nextDouble());
+        assertEquals(0.0, reader.nextDouble());
+        assertEquals(Double.POSITIVE_INFINITY, reader.nextDouble());
+        assertEquals(0.0, reader.nextDouble());
+    }
+
+    @Test
+    void rejectsMalformedExponents() throws IOException {
+        NumberReader reader = reader("5e e5 1e- 1e+ 1e2.5 1ee2 4", Locale.US);
+        for (int i = 0; i < 6; i++) {
+            assertThrows(MalformedNumberException.class, reader::nextDouble);
+        }
+        assertEquals(4.0, reader.nextDouble());
+    }
+
+    @Test
+    void roundsLikeParseDouble() throws IOException {
+        String[] numbers = {
+                "0.1", "0.3", "123456789012345678901234567890", "1234567890.1234567890123e-10",
+                "9007199254740993", "2.2250738585072011e-308", "4.9e-324", "1.7976931348623157e308",
+                "0.000000000000000000000000000001", "3.14159265358979323846264338327950288"
+        };
+        NumberReader reader = reader(String.join(" ", numbers), Locale.US);
+        for (String number : numbers) {
+            assertEquals(Double.parseDouble(number), reader.nextDouble(), number);
+        }
+    }
+
+    @Test
+    void readsIntegersUpToTheirLimits() throws IOException {
+        NumberReader reader = reader("2147483647 -2147483648 +7 2147483648 -2147483649 - 12", Locale.US);
+        assertEquals(Integer.MAX_VALUE, reader.nextInt());
+        assertEquals(Integer.MIN_VALUE, reader.nextInt());
+        assertEquals(7, reader.nextInt());
+        assertThrows(MalformedNumberException.class, reader::nextInt);
+        assertThrows(MalformedNumberException.class, reader::nextInt);
+        assertThrows(MalformedNumberException.class, reader::nextInt);
+        assertEquals(12, reader.nextInt());
+    }
+
+    @Test
+    void tellsWhereAMalformedTokenStarted() throws IOException {
+        NumberReader reader = reader("1 2\n  x3\n", Locale.US);
+        assertEquals(1, reader.nextInt());
+        assertEquals(2, reader.nextInt());
+        MalformedNumberException e = assertThrows(MalformedNumberException.class, reader::nextInt);
+        assertEquals("x3", e.getToken());
+        assertEquals(2, e.getLine());
+        assertEquals(3, e.getColumn());
+        assertFalse(reader.hasNext());
+        assertThrows(NoSuchElementException.class, reader::nextInt);
+    }
+
+    private static NumberReader reader(String text, Locale locale) {
+        return new NumberReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), locale);
+    }
+}
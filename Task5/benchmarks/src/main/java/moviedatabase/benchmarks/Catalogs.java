@@ -0,0 +1,116 @@
+package moviedatabase.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic movie files for the benchmarks.
+ * Titles are made of a few words from a fixed vocabulary followed by a number, and review scores
+ * are spread evenly from "1/5" to "5/5". The same number of rows always gives the same file,
+ * so results can be compared between runs.
+ * <p>
+ * Generated files are kept in the temporary directory and reused by later forks and runs.
+ */
+final class Catalogs {
+    private static final String[] WORDS = {
+            "the", "matrix", "love", "story", "night", "dark", "return", "of", "king", "war",
+            "star", "lost", "city", "summer", "winter", "last", "first", "man", "woman", "house",
+            "river", "fire", "ice", "dream", "ghost", "silent", "blue", "red", "golden", "secret",
+            "island", "road", "journey", "shadow", "empire", "heart", "storm", "garden", "time", "edge"
+    };
+    private static final long SEED = 0x5EEDL;
+
+    private Catalogs() {
+    }
+
+    /**
+     * Returns a movie file with the specified number of rows, generating it if needed.
+     *
+     * @param rows the number of movies in the file
+     * @return the path of the movie file
+     */
+    static Path catalog(int rows) {
+        Path path = Paths.get(System.getProperty("java.io.tmpdir"), "moviedatabase-bench-" + rows + ".txt");
+        if (Files.exists(path)) {
+            return path;
+        }
+        try {
+            Path temp = Files.createTempFile(path.getParent(), "moviedatabase-bench-", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                SplittableRandom random = new SplittableRandom(SEED);
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < rows; i++) {
+                    line.setLength(0);
+                    appendTitle(line, random, i);
+                    line.append(',').append(1 + random.nextInt(5)).append("/5");
+                    writer.write(line.toString());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred while generating the catalog", e);
+        }
+    }
+
+    /**
+     * Copies a catalog into a new directory, for benchmarks that change the movie file.
+     *
+     * @param rows the number of movies in the file
+     * @return the path of the copy
+     */
+    static Path copyOf(int rows) {
+        try {
+            Path directory = Files.createTempDirectory("moviedatabase-bench-");
+            return Files.copy(catalog(rows), directory.resolve("Movies.txt"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred while copying the catalog", e);
+        }
+    }
+
+    /**
+     * Deletes a copied catalog together with the journal files next to it.
+     *
+     * @param path the path of the copy
+     */
+    static void delete(Path path) {
+        try (var files = Files.list(path.getParent())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(path.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred while deleting the catalog", e);
+        }
+    }
+
+    /**
+     * Returns a title made of two to four words and a number.
+     *
+     * @param random the random source
+     * @param number the number to end the title with
+     * @return the title
+     */
+    static String title(SplittableRandom random, int number) {
+        StringBuilder title = new StringBuilder();
+        appendTitle(title, random, number);
+        return title.toString();
+    }
+
+    private static void appendTitle(StringBuilder title, SplittableRandom random, int number) {
+        int words = 2 + random.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length()).append(' ');
+        }
+        title.append(number);
+    }
+}
@@ -0,0 +1,70 @@
+package moviedatabase.benchmarks;
+
+import moviedatabase.data.MovieDatabase;
+import moviedatabase.model.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding single movies to a MovieDatabase, including indexing and the journal write.
+ * The database works on a copy of the catalog, which is deleted after the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+    private static final int TITLES = 1 << 16;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean syncWrites;
+
+    private Path catalog;
+    private MovieDatabase movieDatabase;
+    private Movie[] movies;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        catalog = Catalogs.copyOf(rows);
+        movieDatabase = new MovieDatabase(catalog.toString());
+        movieDatabase.setSyncWrites(syncWrites);
+
+        // The movies are made up front, so that only adding them is measured
+        SplittableRandom random = new SplittableRandom(rows);
+        movies = new Movie[TITLES];
+        for (int i = 0; i < movies.length; i++) {
+            movies[i] = new Movie(Catalogs.title(random, rows + i), (1 + random.nextInt(5)) + "/5");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        movieDatabase.close();
+        Catalogs.delete(catalog);
+    }
+
+    @Benchmark
+    public void addMovie() {
+        movieDatabase.addMovie(movies[next++ & (TITLES - 1)]);
+    }
+}
@@ -0,0 +1,68 @@
+package moviedatabase.benchmarks;
+
+import moviedatabase.data.MovieDatabase;
+import moviedatabase.data.StorageMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to construct a MovieDatabase, which loads and indexes the whole file.
+ * Every invocation is a cold load, so it is measured as single shots.
+ * With {@code binarySnapshot} the database starts from the binary snapshot of the file,
+ * otherwise the snapshot is deleted before every load, so the file is parsed and the snapshot written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"HEAP", "MAPPED", "PACKED", "OFF_HEAP"})
+    public StorageMode storageMode;
+
+    @Param({"false", "true"})
+    public boolean binarySnapshot;
+
+    private String fileName;
+    private Path snapshotPath;
+
+    @Setup
+    public void setUp() {
+        fileName = Catalogs.catalog(rows).toString();
+        snapshotPath = Path.of(fileName + ".bin");
+        new MovieDatabase(fileName, storageMode).close();
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteSnapshot() throws IOException {
+        if (!binarySnapshot) {
+            Files.deleteIfExists(snapshotPath);
+        }
+    }
+
+    @Benchmark
+    public MovieDatabase load() {
+        MovieDatabase movieDatabase = new MovieDatabase(fileName, storageMode);
+        movieDatabase.close();
+        return movieDatabase;
+    }
+}
@@ -0,0 +1,65 @@
+package moviedatabase.benchmarks;
+
+import moviedatabase.data.MovieDatabase;
+import moviedatabase.model.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures searches on a loaded MovieDatabase. Throughput and sampled latency are both reported,
+ * so the sample mode gives the latency percentiles.
+ * <p>
+ * The keywords cover a common word, a rare match that needs most of the title index,
+ * a keyword that matches nothing and a keyword too short for the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"matrix", "ghost 99", "xyzzy", "ic"})
+    public String keyword;
+
+    @Param({"5"})
+    public int minReviewScore;
+
+    private MovieDatabase movieDatabase;
+
+    @Setup
+    public void setUp() {
+        movieDatabase = new MovieDatabase(Catalogs.catalog(rows).toString());
+    }
+
+    @TearDown
+    public void tearDown() {
+        movieDatabase.close();
+    }
+
+    @Benchmark
+    public List<Movie> searchByTitle() {
+        return movieDatabase.searchByTitle(keyword);
+    }
+
+    @Benchmark
+    public List<Movie> searchByReviewScore() {
+        return movieDatabase.searchByReviewScore(minReviewScore);
+    }
+}
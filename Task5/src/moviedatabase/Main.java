@@ -1,24 +1,125 @@
 package moviedatabase;
 
 import moviedatabase.data.MovieDatabase;
+import moviedatabase.server.MovieServer;
 import moviedatabase.ui.MovieDatabaseUI;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Entry point for a movie database as part of an assignment
  * in the course Introduction to Programming with Java.
  */
 public class Main {
+    private static final int DEFAULT_PORT = 4444;
+    private static final long METRICS_REPORT_MINUTES = 1;
+
     /**
-     * Program entry point. Starts the movie database UI.
+     * Program entry point. Starts the movie database UI, or with "--server [port]"
+     * a server that answers queries over the network until the program is stopped.
+     * The server only accepts connections from this computer unless "--bind address" names
+     * the address to listen on, such as 0.0.0.0 for all of them.
+     * With "--metrics" the database is measured and its metrics are published over JMX,
+     * and the server also prints them every minute.
+     * With "--watch" lines that other programs append to the movie file are picked up while running.
      *
-     * @param args not used
+     * @param args "--server" and an optional port to start the server instead of the UI,
+     *             "--bind" and an address for the server to listen on,
+     *             "--metrics" to enable metrics and "--watch" to follow the movie file
      */
     public static void main(String[] args) {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean metrics = options.remove("--metrics");
+        boolean watch = options.remove("--watch");
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        int bind = options.indexOf("--bind");
+        if (bind >= 0) {
+            if (bind + 1 == options.size()) {
+                System.out.println("Missing address after --bind");
+                return;
+            }
+            try {
+                bindAddress = InetAddress.getByName(options.get(bind + 1));
+            } catch (UnknownHostException e) {
+                System.out.println("Invalid address: " + options.get(bind + 1));
+                return;
+            }
+            options.subList(bind, bind + 2).clear();
+        }
+
+        if (!options.isEmpty() && options.get(0).equals("--server")) {
+            int port = DEFAULT_PORT;
+            if (options.size() > 1) {
+                try {
+                    port = Integer.parseInt(options.get(1));
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid port: " + options.get(1));
+                    return;
+                }
+            }
+            MovieDatabase movieDatabase = new MovieDatabase("Movies.txt");
+            if (metrics) {
+                enableMetrics(movieDatabase);
+                movieDatabase.getMetrics().startReporting(System.out, METRICS_REPORT_MINUTES, TimeUnit.MINUTES);
+            }
+            if (watch) {
+                movieDatabase.watchFile();
+            }
+            startServer(movieDatabase, bindAddress, port);
+            return;
+        }
+
         // Construct and start the UI
         MovieDatabase movieDatabase = new MovieDatabase("Movies.txt");
+        if (metrics) {
+            enableMetrics(movieDatabase);
+        }
+        if (watch) {
+            movieDatabase.watchFile();
+        }
         MovieDatabaseUI movieDatabaseUI = new MovieDatabaseUI(movieDatabase);
         movieDatabaseUI.startUI();
+        movieDatabase.close();
+    }
+
+    /**
+     * Enables the metrics of the movie database and publishes them over JMX.
+     *
+     * @param movieDatabase the database to measure
+     */
+    private static void enableMetrics(MovieDatabase movieDatabase) {
+        movieDatabase.getMetrics().setEnabled(true);
+        movieDatabase.getMetrics().registerMBean("Movies.txt");
+    }
+
+    /**
+     * Starts a server for the movie database. The server and the database are closed
+     * when the program is stopped.
+     *
+     * @param movieDatabase the database to serve
+     * @param bindAddress   the address to listen on
+     * @param port          the port to listen on
+     */
+    private static void startServer(MovieDatabase movieDatabase, InetAddress bindAddress, int port) {
+        MovieServer server = new MovieServer(movieDatabase, bindAddress, port);
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.out.println("An error occurred while starting the server: " + e.getMessage());
+            movieDatabase.close();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            movieDatabase.close();
+        }));
+        System.out.println("Listening on " + bindAddress.getHostAddress() + " port " + server.getPort());
     }
 }
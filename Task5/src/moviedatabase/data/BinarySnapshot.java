@@ -0,0 +1,525 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A binary copy of a loaded movie file, holding the movies together with the title and score
+ * indexes that were built from it, so that the next start does not have to parse
+ * and index the file again. It sits next to the movie file: "Movies.txt.bin" for "Movies.txt".
+ * <p>
+ * The file starts with a header holding a magic number, the format version, the size and
+ * modification time of the movie file it was built from, and the length and CRC32C checksum
+ * of the rest of the file. A snapshot with another version, a wrong checksum, or a movie file
+ * that has changed since is ignored, and the movie file is parsed as usual.
+ * <p>
+ * The rest of the file is a sequence of length-prefixed big-endian arrays. They are read by
+ * memory-mapping each one and copying it out in bulk, and with {@link StorageMode#MAPPED} the
+ * titles are not copied at all but read from the mapping.
+ * <p>
+ * A mapping is only released when its buffer is garbage collected. On Windows a snapshot that
+ * is still mapped, by this process or another one, cannot be replaced, and writing a new
+ * snapshot fails until the old one is no longer mapped. The movie file is then parsed again
+ * on the next start, and the snapshot is written then.
+ */
+final class BinarySnapshot {
+    private static final int MAGIC = 0x4D444253;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 36;
+    private static final long CHECKSUM_CHUNK_SIZE = 256L << 20;
+    private static final int MAX_DICTIONARY_SIZE = 255;
+
+    private final Path sourcePath;
+    private final Path path;
+    private final Path tempPath;
+    private long sourceSize;
+    private long sourceModified;
+    private MovieStore store;
+    private TitleIndex titleIndex;
+    private ScoreIndex scoreIndex;
+
+    /**
+     * Constructs a BinarySnapshot for the specified movie file.
+     *
+     * @param sourcePath the path of the movie file
+     */
+    BinarySnapshot(Path sourcePath) {
+        this.sourcePath = sourcePath;
+        this.path = sourcePath.resolveSibling(sourcePath.getFileName() + ".bin");
+        this.tempPath = sourcePath.resolveSibling(sourcePath.getFileName() + ".bin.tmp");
+    }
+
+    /**
+     * Opens the snapshot if it is complete and was built from the movie file as it is now.
+     * The size and modification time of the movie file are remembered, so that a snapshot
+     * written later describes the file as it was before it was parsed.
+     *
+     * @param storageMode how the movies are kept in memory
+     * @return true if the snapshot was opened, false if the movie file has to be parsed
+     * @throws IOException if the snapshot exists but cannot be read
+     */
+    boolean open(StorageMode storageMode) throws IOException {
+        if (!Files.exists(sourcePath)) {
+            return false;
+        }
+        sourceSize = Files.size(sourcePath);
+        sourceModified = Files.getLastModifiedTime(sourcePath).toMillis();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != sourceSize || header.getLong() != sourceModified) {
+                return false;
+            }
+            long length = header.getLong();
+            int checksum = header.getInt();
+            if (channel.size() != HEADER_SIZE + length || checksum(channel, length) != checksum) {
+                return false;
+            }
+
+            Input in = new Input(channel, HEADER_SIZE);
+            store = readStore(in, storageMode);
+            titleIndex = TitleIndex.readFrom(in);
+            scoreIndex = ScoreIndex.readFrom(in);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the size the movie file had when {@link #open(StorageMode)} was called.
+     *
+     * @return the size of the movie file in bytes, or 0 if it did not exist
+     */
+    long sourceSize() {
+        return sourceSize;
+    }
+
+    /**
+     * Returns the store read by {@link #open(StorageMode)}.
+     *
+     * @return the movie store
+     */
+    MovieStore store() {
+        return store;
+    }
+
+    /**
+     * Returns the title index read by {@link #open(StorageMode)}.
+     *
+     * @return the title index
+     */
+    TitleIndex titleIndex() {
+        return titleIndex;
+    }
+
+    /**
+     * Returns the score index read by {@link #open(StorageMode)}.
+     *
+     * @return the score index
+     */
+    ScoreIndex scoreIndex() {
+        return scoreIndex;
+    }
+
+    /**
+     * Writes a new snapshot of the movies parsed from the movie file and their indexes.
+     * {@link #open(StorageMode)} must have been called before the movie file was parsed.
+     * The snapshot is written to a temporary file first and then moved into place.
+     * Nothing is written if a title holds a lone surrogate char, which UTF-8 cannot hold, or if
+     * there are too many distinct review scores for the one-byte codes.
+     * If the old snapshot cannot be replaced, the temporary file is deleted again.
+     *
+     * @param store      the movies parsed from the movie file
+     * @param titleIndex the title index of the movies
+     * @param scoreIndex the score index of the movies
+     * @throws IOException if the snapshot cannot be written
+     */
+    void write(MovieStore store, TitleIndex titleIndex, ScoreIndex scoreIndex) throws IOException {
+        int size = store.size();
+        byte[] scoreCodes = new byte[size];
+        int[] titleEnds = new int[size];
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        long titleBytes = 0;
+        for (int id = 0; id < size; id++) {
+            Movie movie = store.get(id);
+            if (PackedMovieStore.hasLoneSurrogate(movie.getTitle())) {
+                return;
+            }
+            Integer code = codes.get(movie.getReviewScore());
+            if (code == null) {
+                if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+                    return;
+                }
+                code = dictionary.size();
+                codes.put(movie.getReviewScore(), code);
+                dictionary.add(movie.getReviewScore());
+            }
+            scoreCodes[id] = (byte) (int) code;
+            titleBytes += movie.getTitle().getBytes(StandardCharsets.UTF_8).length;
+            if (titleBytes > Integer.MAX_VALUE) {
+                return;
+            }
+            titleEnds[id] = (int) titleBytes;
+        }
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel, HEADER_SIZE);
+            out.writeInt(dictionary.size());
+            for (String reviewScore : dictionary) {
+                out.writeBytes(reviewScore.getBytes(StandardCharsets.UTF_8));
+            }
+            out.writeBytes(scoreCodes);
+            out.writeInts(titleEnds, size);
+            out.writeInt((int) titleBytes);
+            for (int id = 0; id < size; id++) {
+                out.writeRaw(store.getTitle(id).getBytes(StandardCharsets.UTF_8));
+            }
+            titleIndex.writeTo(out);
+            scoreIndex.writeTo(out);
+            long length = out.finish();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified)
+                    .putLong(length).putInt(out.checksum());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileSystemException e) {
+            Files.deleteIfExists(tempPath);
+            if (MappedMovieStore.MAPPINGS_LOCK_FILES) {
+                throw new IOException("The old binary snapshot is still memory-mapped and cannot be replaced: "
+                        + e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the movies of the snapshot into a store for the specified storage mode.
+     *
+     * @param in          the snapshot positioned at the movies
+     * @param storageMode how the movies are kept in memory
+     * @return the store holding the movies
+     * @throws IOException if the snapshot cannot be read
+     */
+    private static MovieStore readStore(Input in, StorageMode storageMode) throws IOException {
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = new String(in.readBytes(), StandardCharsets.UTF_8);
+        }
+        byte[] scoreCodes = in.readBytes();
+        int[] titleEnds = in.readInts();
+        ByteBuffer titles = in.readBuffer();
+
+        switch (storageMode) {
+            case MAPPED:
+                return new PackedMovieStore(false, titles, titleEnds, scoreCodes, dictionary);
+            case PACKED:
+            case OFF_HEAP:
+                boolean offHeap = storageMode == StorageMode.OFF_HEAP;
+                ByteBuffer copy = offHeap ? ByteBuffer.allocateDirect(titles.remaining())
+                        : ByteBuffer.allocate(titles.remaining());
+                copy.put(titles).flip();
+                return new PackedMovieStore(offHeap, copy, titleEnds, scoreCodes, dictionary);
+            default:
+                byte[] bytes = new byte[titles.remaining()];
+                titles.get(bytes);
+                MovieStore store = new HeapMovieStore();
+                int start = 0;
+                for (int id = 0; id < titleEnds.length; id++) {
+                    String title = new String(bytes, start, titleEnds[id] - start, StandardCharsets.UTF_8);
+                    store.add(new Movie(title, dictionary[scoreCodes[id] & 0xFF]));
+                    start = titleEnds[id];
+                }
+                return store;
+        }
+    }
+
+    /**
+     * Computes the CRC32C checksum of everything after the header.
+     *
+     * @param channel the snapshot file
+     * @param length  the number of bytes after the header
+     * @return the checksum
+     * @throws IOException if the snapshot cannot be read
+     */
+    private static int checksum(FileChannel channel, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = 0; position < length; position += CHECKSUM_CHUNK_SIZE) {
+            long size = Math.min(CHECKSUM_CHUNK_SIZE, length - position);
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + position, size));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes the arrays of a snapshot through a buffer and keeps a checksum of everything written.
+     */
+    static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32C crc;
+        private long position;
+        private long written;
+
+        Output(FileChannel channel, long position) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(1 << 20);
+            this.crc = new CRC32C();
+            this.position = position;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Writes the length of a byte array followed by its bytes.
+         *
+         * @param values the bytes to write
+         * @throws IOException if the snapshot cannot be written
+         */
+        void writeBytes(byte[] values) throws IOException {
+            writeBytes(values, values.length);
+        }
+
+        /**
+         * Writes a length followed by the first bytes of an array.
+         *
+         * @param values the array holding the bytes
+         * @param size   the number of bytes to write
+         * @throws IOException if the snapshot cannot be written
+         */
+        void writeBytes(byte[] values, int size) throws IOException {
+            writeInt(size);
+            writeRaw(values, size);
+        }
+
+        /**
+         * Writes bytes without a length, as part of an array whose length was written before.
+         *
+         * @param values the bytes to write
+         * @throws IOException if the snapshot cannot be written
+         */
+        void writeRaw(byte[] values) throws IOException {
+            writeRaw(values, values.length);
+        }
+
+        private void writeRaw(byte[] values, int size) throws IOException {
+            int offset = 0;
+            while (offset < size) {
+                ensure(1);
+                int count = Math.min(size - offset, buffer.remaining());
+                buffer.put(values, offset, count);
+                offset += count;
+            }
+        }
+
+        /**
+         * Writes a length followed by the first values of an int array.
+         *
+         * @param values the array holding the values
+         * @param size   the number of values to write
+         * @throws IOException if the snapshot cannot be written
+         */
+        void writeInts(int[] values, int size) throws IOException {
+            writeInt(size);
+            writeRawInts(values, size);
+        }
+
+        /**
+         * Writes int values without a length, as part of an array whose length was written before.
+         *
+         * @param values the array holding the values
+         * @param size   the number of values to write
+         * @throws IOException if the snapshot cannot be written
+         */
+        void writeRawInts(int[] values, int size) throws IOException {
+            int offset = 0;
+            while (offset < size) {
+                ensure(4);
+                int count = Math.min(size - offset, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * 4);
+                offset += count;
+            }
+        }
+
+        /**
+         * Writes a length followed by the first values of a long array.
+         *
+         * @param values the array holding the values
+         * @param size   the number of values to write
+         * @throws IOException if the snapshot cannot be written
+         */
+        void writeLongs(long[] values, int size) throws IOException {
+            writeInt(size);
+            int offset = 0;
+            while (offset < size) {
+                ensure(8);
+                int count = Math.min(size - offset, buffer.remaining() / 8);
+                buffer.asLongBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * 8);
+                offset += count;
+            }
+        }
+
+        /**
+         * Writes out what is left in the buffer.
+         *
+         * @return the number of bytes written since the start position
+         * @throws IOException if the snapshot cannot be written
+         */
+        long finish() throws IOException {
+            flush();
+            return written;
+        }
+
+        /**
+         * Returns the checksum of the bytes written so far.
+         *
+         * @return the CRC32C checksum
+         */
+        int checksum() {
+            return (int) crc.getValue();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                int count = channel.write(buffer, position);
+                position += count;
+                written += count;
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads the arrays of a snapshot by memory-mapping each of them.
+     */
+    static final class Input {
+        private final FileChannel channel;
+        private final ByteBuffer scratch;
+        private long position;
+
+        Input(FileChannel channel, long position) {
+            this.channel = channel;
+            this.scratch = ByteBuffer.allocate(8);
+            this.position = position;
+        }
+
+        int readInt() throws IOException {
+            return read(4).getInt();
+        }
+
+        long readLong() throws IOException {
+            return read(8).getLong();
+        }
+
+        /**
+         * Reads a length-prefixed byte array.
+         *
+         * @return the bytes
+         * @throws IOException if the snapshot cannot be read
+         */
+        byte[] readBytes() throws IOException {
+            ByteBuffer mapped = readBuffer();
+            byte[] values = new byte[mapped.remaining()];
+            mapped.get(values);
+            return values;
+        }
+
+        /**
+         * Maps a length-prefixed byte array without copying it.
+         *
+         * @return a read-only buffer over the bytes in the file
+         * @throws IOException if the snapshot cannot be read
+         */
+        ByteBuffer readBuffer() throws IOException {
+            int size = readInt();
+            return map(size);
+        }
+
+        /**
+         * Reads a length-prefixed int array.
+         *
+         * @return the values
+         * @throws IOException if the snapshot cannot be read
+         */
+        int[] readInts() throws IOException {
+            int[] values = new int[readInt()];
+            map(values.length * 4L).asIntBuffer().get(values);
+            return values;
+        }
+
+        /**
+         * Reads a length-prefixed long array.
+         *
+         * @return the values
+         * @throws IOException if the snapshot cannot be read
+         */
+        long[] readLongs() throws IOException {
+            long[] values = new long[readInt()];
+            map(values.length * 8L).asLongBuffer().get(values);
+            return values;
+        }
+
+        private ByteBuffer map(long size) throws IOException {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            position += size;
+            return mapped;
+        }
+
+        private ByteBuffer read(int size) throws IOException {
+            scratch.clear().limit(size);
+            while (scratch.hasRemaining()) {
+                if (channel.read(scratch, position + scratch.position()) < 0) {
+                    throw new IOException("The binary snapshot ends too early");
+                }
+            }
+            position += size;
+            return scratch.flip();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package moviedatabase.data;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the largest of the values offered to it, up to a fixed number of them.
+ * The values are kept in a min-heap of primitive longs, so the smallest kept value can be
+ * compared and replaced in logarithmic time, and memory stays proportional to the capacity
+ * no matter how many values are offered. The array starts small and grows up to the capacity,
+ * so a large capacity only costs memory when that many values are offered.
+ * Callers pack whatever they rank by into the long.
+ */
+final class BoundedHeap {
+    private static final int INITIAL_SIZE = 16;
+
+    private final int capacity;
+    private long[] heap;
+    private int size;
+
+    /**
+     * Constructs an empty BoundedHeap.
+     *
+     * @param capacity the maximum number of values to keep
+     */
+    BoundedHeap(int capacity) {
+        this.capacity = capacity;
+        this.heap = new long[Math.min(capacity, INITIAL_SIZE)];
+    }
+
+    /**
+     * Offers a value, which is kept if the heap is not full or if it is larger than the smallest kept value.
+     *
+     * @param value the value to offer
+     */
+    void offer(long value) {
+        if (size < capacity) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, (int) Math.min(2L * size, capacity));
+            }
+            heap[size] = value;
+            siftUp(size++);
+        } else if (size > 0 && value > heap[0]) {
+            heap[0] = value;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns the number of kept values.
+     *
+     * @return the number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the kept values, largest first.
+     *
+     * @return a new array holding the values in descending order
+     */
+    long[] toSortedArray() {
+        long[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted);
+        for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+            long value = sorted[i];
+            sorted[i] = sorted[j];
+            sorted[j] = value;
+        }
+        return sorted;
+    }
+
+    private void siftUp(int position) {
+        long value = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = value;
+    }
+
+    private void siftDown(int position) {
+        long value = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = value;
+    }
+}
@@ -0,0 +1,85 @@
+package moviedatabase.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Finds byte patterns in byte arrays eight bytes at a time.
+ * Every step reads the eight bytes that could start a match and the eight bytes that could end one
+ * as two longs, and marks the positions where both the first and the last byte of the pattern fit,
+ * using the usual SIMD-within-a-register test for zero bytes. Only the marked positions are compared
+ * in full, so a scan runs close to the speed of reading the memory and allocates nothing.
+ */
+final class ByteSearch {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private ByteSearch() {
+    }
+
+    /**
+     * Returns the first position in a range of an array where a pattern starts.
+     * The pattern has to fit completely inside the range.
+     *
+     * @param bytes   the array to search
+     * @param from    the first position to search, inclusive
+     * @param to      the end of the range, exclusive
+     * @param pattern the pattern to find, not empty
+     * @return the position of the first match, or -1 if there is none
+     */
+    static int indexOf(byte[] bytes, int from, int to, byte[] pattern) {
+        int length = pattern.length;
+        long first = ONES * (pattern[0] & 0xFF);
+        long last = ONES * (pattern[length - 1] & 0xFF);
+
+        int i = from;
+        for (; i + length + 7 <= to; i += 8) {
+            long starts = (long) LONGS.get(bytes, i) ^ first;
+            long endings = (long) LONGS.get(bytes, i + length - 1) ^ last;
+            long candidates = zeroBytes(starts | endings);
+            while (candidates != 0) {
+                int position = i + (Long.numberOfTrailingZeros(candidates) >>> 3);
+                if (matchesAt(bytes, position, pattern)) {
+                    return position;
+                }
+                candidates &= candidates - 1;
+            }
+        }
+        for (; i + length <= to; i++) {
+            if (matchesAt(bytes, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks the bytes of a word that are zero by setting their high bit. A byte above a zero byte
+     * may be marked as well, which only costs a comparison, but the lowest marked byte is always zero.
+     *
+     * @param word the word to test
+     * @return the word with the high bit set in the zero bytes
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    /**
+     * Checks whether a pattern starts at a position of an array.
+     *
+     * @param bytes    the array
+     * @param position the position in the array, with room for the whole pattern after it
+     * @param pattern  the pattern
+     * @return true if the bytes at the position equal the pattern
+     */
+    private static boolean matchesAt(byte[] bytes, int position, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (bytes[position + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package moviedatabase.data;
+
+/**
+ * The counters of the query cache of a MovieDatabase at one point in time.
+ */
+public final class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+
+    /**
+     * Constructs a CacheStats object with the specified counters.
+     *
+     * @param hits          the number of searches answered from the cache
+     * @param misses        the number of searches that had to run against the indexes
+     * @param evictions     the number of results dropped to stay within the size limits
+     * @param invalidations the number of results dropped because an added movie changed them
+     */
+    CacheStats(long hits, long misses, long evictions, long invalidations) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+    }
+
+    /**
+     * Returns the number of searches answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of searches that had to run against the indexes.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of results dropped to stay within the size limits.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of results dropped because an added movie changed them.
+     *
+     * @return the number of invalidations
+     */
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", invalidations=" + invalidations;
+    }
+}
@@ -0,0 +1,297 @@
+package moviedatabase.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A BK-tree over the distinct words of the movie titles, used to find words within a small
+ * edit distance of a misspelled word. Words are the lower-cased runs of letters and digits
+ * in a title. Every word keeps the ids of the titles it appears in, so the titles with a word
+ * close to a misspelled word are found without searching the titles again.
+ * <p>
+ * Every child of a node is stored under its edit distance to the node. By the triangle
+ * inequality, the words within distance d of a query word can only be below the children whose
+ * distance to the node differs by at most d from the distance of the query word to the node,
+ * so a search only visits a small part of the tree.
+ * <p>
+ * Words and ids are only ever added, and a node is fully built before it is linked into the tree,
+ * so a lookup that races with an add always ends, even though it may miss the new title.
+ */
+final class FuzzyIndex {
+    /**
+     * The largest supported edit distance.
+     */
+    static final int MAX_DISTANCE = 2;
+
+    private Node root;
+
+    /**
+     * Adds the words of a title that are not in the tree yet, and the title to all of its words.
+     * Titles must be added in the order of their ids.
+     *
+     * @param id    the id of the title
+     * @param title the title to add
+     */
+    void add(int id, String title) {
+        for (String word : words(title)) {
+            IntList ids = addWord(word).ids;
+            if (ids.last() != id) {
+                ids.add(id);
+            }
+        }
+    }
+
+    /**
+     * Returns the titles that have a word within the specified edit distance of a word.
+     * The sorted ids of the similar words are merged in pairs, round after round, so the work
+     * follows the number of ids found and not the number of titles.
+     *
+     * @param word        the lower-cased word to search for
+     * @param maxDistance the largest edit distance to accept
+     * @return the ids of the titles, in ascending order
+     */
+    int[] matchIds(String word, int maxDistance) {
+        List<Node> nodes = search(word, maxDistance);
+        int count = nodes.size();
+        int[][] lists = new int[count][];
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            // The size is read first, since a longer array replaces the old one before the size grows
+            sizes[i] = nodes.get(i).ids.size();
+            lists[i] = nodes.get(i).ids.array();
+        }
+        if (count == 0) {
+            return new int[0];
+        }
+        while (count > 1) {
+            int merged = 0;
+            for (int i = 0; i < count; i += 2) {
+                if (i + 1 == count) {
+                    lists[merged] = lists[i];
+                    sizes[merged] = sizes[i];
+                } else {
+                    int[] union = new int[sizes[i] + sizes[i + 1]];
+                    sizes[merged] = union(lists[i], sizes[i], lists[i + 1], sizes[i + 1], union);
+                    lists[merged] = union;
+                }
+                merged++;
+            }
+            count = merged;
+        }
+        return Arrays.copyOf(lists[0], sizes[0]);
+    }
+
+    /**
+     * Returns the ids that are in both of two ascending lists.
+     *
+     * @param a the first list
+     * @param b the second list
+     * @return the common ids, in ascending order
+     */
+    static int[] intersect(int[] a, int[] b) {
+        int[] common = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                common[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    /**
+     * Merges two ascending lists into one without duplicates.
+     *
+     * @param a     the first list
+     * @param aSize the number of ids in the first list
+     * @param b     the second list
+     * @param bSize the number of ids in the second list
+     * @param into  the array to merge into, with room for both lists
+     * @return the number of ids merged into the array
+     */
+    private static int union(int[] a, int aSize, int[] b, int bSize, int[] into) {
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < aSize && j < bSize) {
+            if (a[i] < b[j]) {
+                into[size++] = a[i++];
+            } else if (a[i] > b[j]) {
+                into[size++] = b[j++];
+            } else {
+                into[size++] = a[i++];
+                j++;
+            }
+        }
+        while (i < aSize) {
+            into[size++] = a[i++];
+        }
+        while (j < bSize) {
+            into[size++] = b[j++];
+        }
+        return size;
+    }
+
+    /**
+     * Finds the words within the specified edit distance of a word.
+     *
+     * @param word        the lower-cased word to search for
+     * @param maxDistance the largest edit distance to accept
+     * @return the nodes of the words within the distance, including the word itself if present
+     */
+    private List<Node> search(String word, int maxDistance) {
+        List<Node> found = new ArrayList<>();
+        if (root == null) {
+            return found;
+        }
+        Distance distance = new Distance(word);
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int d = distance.to(node.word);
+            if (d <= maxDistance) {
+                found.add(node);
+            }
+            Node[] children = node.children;
+            int from = Math.max(1, d - maxDistance);
+            int to = Math.min(children.length - 1, d + maxDistance);
+            for (int i = from; i <= to; i++) {
+                if (children[i] != null) {
+                    pending.push(children[i]);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Splits a title into its lower-cased words, the runs of letters and digits.
+     *
+     * @param title the title to split
+     * @return the words of the title
+     */
+    static List<String> words(String title) {
+        String folded = title.toLowerCase();
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean inWord = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Adds a word to the tree unless it is already there.
+     *
+     * @param word the lower-cased word to add
+     * @return the node of the word
+     */
+    private Node addWord(String word) {
+        if (root == null) {
+            root = new Node(word);
+            return root;
+        }
+        Node node = root;
+        while (true) {
+            int d = Distance.between(word, node.word);
+            if (d == 0) {
+                return node;
+            }
+            if (d >= node.children.length) {
+                node.children = Arrays.copyOf(node.children, d + 1);
+            }
+            Node child = node.children[d];
+            if (child == null) {
+                child = new Node(word);
+                node.children[d] = child;
+                return child;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * A word in the tree with the ids of its titles and its children, which are stored at
+     * the index of their distance to it.
+     */
+    private static final class Node {
+        private final String word;
+        private final IntList ids = new IntList(1);
+        private Node[] children;
+
+        Node(String word) {
+            this.word = word;
+            this.children = new Node[0];
+        }
+    }
+
+    /**
+     * Computes Levenshtein distances from one word to others, reusing the same two rows.
+     * The tree needs exact distances to choose which children to visit, so the computation
+     * is never cut short.
+     */
+    private static final class Distance {
+        private final String word;
+        private int[] previous;
+        private int[] current;
+
+        Distance(String word) {
+            this.word = word;
+            this.previous = new int[word.length() + 1];
+            this.current = new int[word.length() + 1];
+        }
+
+        /**
+         * Returns the edit distance from the word to another word.
+         *
+         * @param other the other word
+         * @return the number of inserted, deleted or replaced chars needed to turn one into the other
+         */
+        int to(String other) {
+            for (int i = 0; i <= word.length(); i++) {
+                previous[i] = i;
+            }
+            for (int j = 1; j <= other.length(); j++) {
+                current[0] = j;
+                char c = other.charAt(j - 1);
+                for (int i = 1; i <= word.length(); i++) {
+                    int replace = previous[i - 1] + (word.charAt(i - 1) == c ? 0 : 1);
+                    current[i] = Math.min(replace, Math.min(previous[i], current[i - 1]) + 1);
+                }
+                int[] row = previous;
+                previous = current;
+                current = row;
+            }
+            return previous[word.length()];
+        }
+
+        /**
+         * Returns the edit distance between two words.
+         *
+         * @param a the first word
+         * @param b the second word
+         * @return the number of inserted, deleted or replaced chars needed to turn one into the other
+         */
+        static int between(String a, String b) {
+            return new Distance(a).to(b);
+        }
+    }
+}
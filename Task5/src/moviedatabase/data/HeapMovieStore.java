@@ -0,0 +1,54 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MovieStore that keeps every movie as a Movie object on the heap.
+ */
+final class HeapMovieStore implements MovieStore {
+    private final List<Movie> movies;
+
+    /**
+     * Constructs an empty HeapMovieStore.
+     */
+    HeapMovieStore() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Constructs a HeapMovieStore backed by the specified list.
+     *
+     * @param movies the list holding the movies
+     */
+    private HeapMovieStore(List<Movie> movies) {
+        this.movies = movies;
+    }
+
+    @Override
+    public int size() {
+        return movies.size();
+    }
+
+    @Override
+    public Movie get(int id) {
+        return movies.get(id);
+    }
+
+    @Override
+    public String getTitle(int id) {
+        return movies.get(id).getTitle();
+    }
+
+    @Override
+    public void add(Movie movie) {
+        movies.add(movie);
+    }
+
+    @Override
+    public MovieStore snapshot() {
+        return new HeapMovieStore(new ArrayList<>(movies));
+    }
+}
@@ -0,0 +1,113 @@
+package moviedatabase.data;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints.
+ * Used by the indexes to hold row ids without boxing them into Integer objects.
+ */
+final class IntList {
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructs an empty IntList with a small default capacity.
+     */
+    IntList() {
+        this(4);
+    }
+
+    /**
+     * Constructs an empty IntList with the specified initial capacity.
+     *
+     * @param capacity the initial capacity
+     */
+    IntList(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Constructs an IntList holding the values of an array, which is used as it is.
+     *
+     * @param values the values of the list
+     */
+    IntList(int[] values) {
+        this.values = values.length == 0 ? new int[1] : values;
+        this.size = values.length;
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value the value to append
+     */
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Appends all values of another list, each increased by the specified offset.
+     *
+     * @param other  the list to append
+     * @param offset the offset to add to every value
+     */
+    void addAll(IntList other, int offset) {
+        if (size + other.size > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + other.size, size + (size >> 1) + 1));
+        }
+        for (int i = 0; i < other.size; i++) {
+            values[size++] = other.values[i] + offset;
+        }
+    }
+
+    /**
+     * Returns the value at the specified position.
+     *
+     * @param index the position of the value
+     * @return the value at the position
+     */
+    int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the array holding the values. Values are only ever appended, so the first
+     * {@link #size()} values of the returned array never change, and together with the
+     * size it is a stable view of the list even while more values are added.
+     *
+     * @return the backing array
+     */
+    int[] array() {
+        return values;
+    }
+
+    /**
+     * Returns a copy of the values in the list.
+     *
+     * @return a new array holding exactly the values
+     */
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Returns the number of values in the list.
+     *
+     * @return the number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the last value in the list, or -1 if the list is empty.
+     *
+     * @return the last value, or -1 if empty
+     */
+    int last() {
+        return size == 0 ? -1 : values[size - 1];
+    }
+}
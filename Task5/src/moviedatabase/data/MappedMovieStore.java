@@ -0,0 +1,427 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A MovieStore that parses a memory-mapped movie file in place.
+ * For every line only the offsets of the title and the review score are kept, together
+ * with the parsed score. Titles and review scores are turned into Strings when a movie
+ * is returned. Movies added after the file was opened are kept on the heap.
+ * <p>
+ * Lines are split the same way as {@code line.split(",")} followed by {@code trim()},
+ * and the file is read as UTF-8.
+ * <p>
+ * A mapping is only released when its buffer is garbage collected, so the file stays mapped
+ * as long as the store is in use. On Windows a mapped file cannot be replaced, so the file
+ * is not compacted while a store maps it.
+ */
+final class MappedMovieStore implements MovieStore {
+    /**
+     * Whether a file cannot be replaced while it is memory-mapped, which is the case on Windows.
+     */
+    static final boolean MAPPINGS_LOCK_FILES = System.getProperty("os.name", "").startsWith("Windows");
+
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private final Chunk[] chunks;
+    private final int[] firstRows;
+    private final int mappedRows;
+    private final List<Movie> added;
+
+    /**
+     * Constructs an empty MappedMovieStore, used when there is no file to map.
+     */
+    MappedMovieStore() {
+        this(new Chunk[0], new ArrayList<>());
+    }
+
+    /**
+     * Constructs a MappedMovieStore over parsed chunks of a file.
+     *
+     * @param chunks the parsed chunks, in file order
+     */
+    MappedMovieStore(List<Chunk> chunks) {
+        this(chunks.toArray(new Chunk[0]), new ArrayList<>());
+    }
+
+    /**
+     * Constructs a MappedMovieStore over parsed chunks of a file.
+     *
+     * @param chunks the parsed chunks, in file order
+     * @param added  the movies added after the file was opened
+     */
+    private MappedMovieStore(Chunk[] chunks, List<Movie> added) {
+        this.chunks = chunks;
+        this.firstRows = new int[chunks.length];
+        int rows = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            // A chunk without movies shares its first row with the next chunk
+            firstRows[i] = rows;
+            rows += chunks[i].rows();
+        }
+        this.mappedRows = rows;
+        this.added = added;
+    }
+
+    /**
+     * Maps and parses a movie file. Files larger than what a single mapping can hold are
+     * mapped in several chunks, which always end at a line break.
+     *
+     * @param path  the path of the movie file
+     * @param limit the number of bytes of the file to map
+     * @return a store holding the movies in the file
+     * @throws IOException if the file cannot be mapped
+     */
+    static MappedMovieStore open(Path path, long limit) throws IOException {
+        List<Chunk> chunks = map(path, MAX_CHUNK_SIZE, limit);
+        for (Chunk chunk : chunks) {
+            chunk.parse();
+        }
+        return new MappedMovieStore(chunks);
+    }
+
+    /**
+     * Maps a movie file in chunks of about the specified size, which always end at a line break.
+     * The chunks are not parsed yet, so they can be parsed in parallel.
+     *
+     * @param path      the path of the movie file
+     * @param chunkSize the size to aim for, at most {@value #MAX_CHUNK_SIZE} bytes
+     * @param limit     the number of bytes of the file to map
+     * @return the mapped chunks, in file order
+     * @throws IOException if the file cannot be mapped
+     */
+    static List<Chunk> map(Path path, long chunkSize, long limit) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), limit);
+            long position = 0;
+            while (position < size) {
+                long end = lineBoundary(channel, Math.min(position + Math.min(chunkSize, MAX_CHUNK_SIZE), size), size);
+                if (end - position > Integer.MAX_VALUE) {
+                    throw new IOException("A line is too long to be mapped");
+                }
+                chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, position, end - position)));
+                position = end;
+            }
+        }
+        return chunks;
+    }
+
+    @Override
+    public int size() {
+        return mappedRows + added.size();
+    }
+
+    @Override
+    public Movie get(int id) {
+        if (id >= mappedRows) {
+            return added.get(id - mappedRows);
+        }
+        int chunk = chunkOf(id);
+        int row = id - firstRows[chunk];
+        return new Movie(chunks[chunk].title(row), chunks[chunk].reviewScore(row));
+    }
+
+    @Override
+    public String getTitle(int id) {
+        if (id >= mappedRows) {
+            return added.get(id - mappedRows).getTitle();
+        }
+        int chunk = chunkOf(id);
+        return chunks[chunk].title(id - firstRows[chunk]);
+    }
+
+    /**
+     * Returns the parsed score of a movie from the mapped file, so that it does not have
+     * to be parsed again from its review score.
+     *
+     * @param id the id of a movie from the mapped file
+     * @return the score, or {@link ScoreIndex#UNSCORED} if the review score could not be parsed
+     */
+    int getScore(int id) {
+        int chunk = chunkOf(id);
+        return chunks[chunk].score(id - firstRows[chunk]);
+    }
+
+    /**
+     * Returns the number of movies read from the mapped file.
+     *
+     * @return the number of mapped movies
+     */
+    int mappedSize() {
+        return mappedRows;
+    }
+
+    @Override
+    public void add(Movie movie) {
+        added.add(movie);
+    }
+
+    @Override
+    public boolean mapsFile() {
+        return chunks.length > 0;
+    }
+
+    @Override
+    public MovieStore snapshot() {
+        return new MappedMovieStore(chunks, new ArrayList<>(added));
+    }
+
+    /**
+     * Finds the chunk holding the movie with the specified id.
+     *
+     * @param id the id of a movie from the mapped file
+     * @return the position of the chunk
+     */
+    private int chunkOf(int id) {
+        int position = Arrays.binarySearch(firstRows, id);
+        if (position < 0) {
+            return -position - 2;
+        }
+        while (chunks[position].rows() == 0) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Finds the end of the line that contains the byte before the specified position.
+     *
+     * @param channel  the file to search
+     * @param position the position to start searching from
+     * @param size     the number of bytes of the file to search
+     * @return the position after the line break, or the size if there is none
+     * @throws IOException if the file cannot be read
+     */
+    private static long lineBoundary(FileChannel channel, long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = (int) Math.min(channel.read(buffer, offset), size - offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * A mapped region of the file that ends at a line break, with the offsets of the
+     * lines in it that hold a movie.
+     */
+    static final class Chunk {
+        private final ByteBuffer buffer;
+        private final IntList lineStarts;
+        private final IntList commas;
+        private final IntList scoreEnds;
+        private final IntList scores;
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.lineStarts = new IntList();
+            this.commas = new IntList();
+            this.scoreEnds = new IntList();
+            this.scores = new IntList();
+        }
+
+        /**
+         * Returns the number of movies in the chunk.
+         *
+         * @return the number of parsed movies
+         */
+        int rows() {
+            return lineStarts.size();
+        }
+
+        /**
+         * Returns the title of a movie in the chunk.
+         *
+         * @param row the position of the movie in the chunk
+         * @return the title
+         */
+        String title(int row) {
+            return decode(lineStarts.get(row), commas.get(row));
+        }
+
+        /**
+         * Returns the review score of a movie in the chunk.
+         *
+         * @param row the position of the movie in the chunk
+         * @return the review score
+         */
+        String reviewScore(int row) {
+            return decode(commas.get(row) + 1, scoreEnds.get(row));
+        }
+
+        /**
+         * Adds a movie in the chunk to a packed store, copying its bytes without decoding them.
+         *
+         * @param row   the position of the movie in the chunk
+         * @param store the store to add the movie to
+         */
+        void addTo(int row, PackedMovieStore store) {
+            int titleStart = trimStart(lineStarts.get(row), commas.get(row));
+            int scoreStart = trimStart(commas.get(row) + 1, scoreEnds.get(row));
+            store.add(buffer, titleStart, trimEnd(titleStart, commas.get(row)),
+                    scoreStart, trimEnd(scoreStart, scoreEnds.get(row)));
+        }
+
+        /**
+         * Returns the number of bytes the titles of the chunk take, without the white space around them.
+         *
+         * @return the total length of the titles in bytes
+         */
+        int titleBytes() {
+            int length = 0;
+            for (int row = 0; row < rows(); row++) {
+                int start = trimStart(lineStarts.get(row), commas.get(row));
+                length += trimEnd(start, commas.get(row)) - start;
+            }
+            return length;
+        }
+
+        /**
+         * Returns the parsed score of a movie in the chunk.
+         *
+         * @param row the position of the movie in the chunk
+         * @return the score, or {@link ScoreIndex#UNSCORED} if it could not be parsed
+         */
+        int score(int row) {
+            return scores.get(row);
+        }
+
+        /**
+         * Finds the lines of the chunk and the commas in them. A line break is "\n", "\r" or "\r\n".
+         */
+        void parse() {
+            int limit = buffer.limit();
+            int start = 0;
+            while (start < limit) {
+                int end = start;
+                while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+                    end++;
+                }
+                parseLine(start, end);
+                start = end + 1;
+                if (end < limit && buffer.get(end) == '\r' && start < limit && buffer.get(start) == '\n') {
+                    start++;
+                }
+            }
+        }
+
+        /**
+         * Records a line if it splits into exactly a title and a review score.
+         * Like {@code split(",")}, empty parts at the end of the line are dropped, so the line
+         * holds a movie if the part after the first comma is not empty and only commas follow it.
+         *
+         * @param start the position of the first byte of the line
+         * @param end   the position after the last byte of the line
+         */
+        private void parseLine(int start, int end) {
+            int comma = start;
+            while (comma < end && buffer.get(comma) != ',') {
+                comma++;
+            }
+            if (comma == end) {
+                return;
+            }
+            int scoreEnd = comma + 1;
+            while (scoreEnd < end && buffer.get(scoreEnd) != ',') {
+                scoreEnd++;
+            }
+            if (scoreEnd == comma + 1) {
+                return;
+            }
+            for (int i = scoreEnd; i < end; i++) {
+                if (buffer.get(i) != ',') {
+                    return;
+                }
+            }
+
+            lineStarts.add(start);
+            commas.add(comma);
+            scoreEnds.add(scoreEnd);
+            scores.add(parseScore(comma + 1, scoreEnd));
+        }
+
+        /**
+         * Parses a review score in the format "X/Y" without creating a String when it consists
+         * of plain digits, a slash and a denominator. Anything else is left to
+         * {@link ScoreIndex#parseReviewScore(String)}.
+         *
+         * @param from the position of the first byte of the review score
+         * @param to   the position after the last byte of the review score
+         * @return the score, or {@link ScoreIndex#UNSCORED} if it cannot be parsed
+         */
+        private int parseScore(int from, int to) {
+            int start = trimStart(from, to);
+            int end = trimEnd(start, to);
+            int value = 0;
+            int i = start;
+            while (i < end && i - start < 9 && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+                value = value * 10 + buffer.get(i) - '0';
+                i++;
+            }
+            if (i > start && i + 1 < end && buffer.get(i) == '/') {
+                int slash = i + 1;
+                while (slash < end && buffer.get(slash) != '/') {
+                    slash++;
+                }
+                if (slash == end) {
+                    return value;
+                }
+            }
+            return ScoreIndex.parseReviewScore(decode(from, to));
+        }
+
+        /**
+         * Decodes the bytes in the specified range, without the white space at either end.
+         *
+         * @param from the position of the first byte
+         * @param to   the position after the last byte
+         * @return the decoded, trimmed text
+         */
+        private String decode(int from, int to) {
+            int start = trimStart(from, to);
+            int end = trimEnd(start, to);
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int trimStart(int from, int to) {
+            while (from < to && (buffer.get(from) & 0xFF) <= ' ') {
+                from++;
+            }
+            return from;
+        }
+
+        private int trimEnd(int from, int to) {
+            while (to > from && (buffer.get(to - 1) & 0xFF) <= ' ') {
+                to--;
+            }
+            return to;
+        }
+    }
+}
@@ -1,108 +1,816 @@
 package moviedatabase.data;
 
+import moviedatabase.metrics.DatabaseMetrics;
+import moviedatabase.metrics.OperationMetrics;
 import moviedatabase.model.Movie;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The MovieDatabase class represents a database of movies.
  * It provides functionality to load movies from a file, search movies by title or review score,
  * add new movies, and save the changes back to the file.
+ * <p>
+ * New movies are appended to a journal next to the file instead of rewriting the whole file.
+ * When the journal has grown large enough, it is folded back into the file in the background.
+ * <p>
+ * A MovieDatabase can be searched and added to from many threads at once. Searches first run
+ * without taking a lock and are only repeated under the read lock if an add ran at the same time,
+ * so concurrent searches do not contend with each other. Adds hold the write lock only while
+ * indexing and appending to the journal, and share the journal flush with other adds.
+ * <p>
+ * The results of title and review score searches are cached. Adding a movie only drops the
+ * cached results that the new movie would be part of.
+ * <p>
+ * Loading, searches and saves can be measured through {@link #getMetrics()}.
+ * <p>
+ * With {@link #watchFile()} the database follows lines that other processes append to the file.
  */
-public class MovieDatabase {
+public class MovieDatabase implements AutoCloseable {
+    private static final int MIN_COMPACTION_RECORDS = 10_000;
+    private static final int IMPORT_BATCH_SIZE = 10_000;
+    private static final int QUERY_CACHE_ENTRIES = 1024;
+    private static final long QUERY_CACHE_WEIGHT = 1L << 20;
+    private static final int MAX_RANKED_SCORE = (1 << 28) - 1;
+    private static final int SPLITERATOR_CHARACTERISTICS =
+            Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+
     private String fileName;
-    private List<Movie> movies;
+    private StorageMode storageMode;
+    private MovieStore store;
+    private TitleIndex titleIndex;
+    private ScoreIndex scoreIndex;
+    private volatile PrefixIndex prefixIndex;
+    private final Object prefixIndexLock = new Object();
+    private volatile FuzzyIndex fuzzyIndex;
+    private final Object fuzzyIndexLock = new Object();
+    private MovieJournal journal;
+    private ExecutorService compactor;
+    private volatile Future<?> compaction;
+    private final QueryCache queryCache = new QueryCache(QUERY_CACHE_ENTRIES, QUERY_CACHE_WEIGHT);
+    private final StampedLock lock = new StampedLock();
+    private final DatabaseMetrics metrics;
+    private final Object tailLock = new Object();
+    private MovieFileTailer tailer;
+    private volatile long fileLength;
+    private volatile boolean journalAppendedMovies;
+    private boolean compactionRefused;
+    private int unindexedBatches;
 
     /**
      * Constructs a MovieDatabase object with the specified file path.
-     * It initializes the movies list and loads the movies from the file.
+     * It initializes the movie store and loads the movies from the file onto the heap.
      *
      * @param fileName the file path to load movies from
      */
     public MovieDatabase(String fileName) {
+        this(fileName, StorageMode.HEAP);
+    }
+
+    /**
+     * Constructs a MovieDatabase object with the specified file path and storage mode.
+     * It initializes the movie store and loads the movies from the file.
+     *
+     * @param fileName    the file path to load movies from
+     * @param storageMode how the movies are kept in memory
+     */
+    public MovieDatabase(String fileName, StorageMode storageMode) {
         this.fileName = fileName;
-        this.movies = new ArrayList<>();
+        this.storageMode = storageMode;
+        this.store = MovieStore.create(storageMode);
+        this.titleIndex = new TitleIndex();
+        this.scoreIndex = new ScoreIndex();
+        this.journal = new MovieJournal(Paths.get(fileName));
+        this.metrics = new DatabaseMetrics(journal::bytesWritten);
+        long start = System.nanoTime();
         loadMovies();
+        metrics.recordLoad(System.nanoTime() - start, store.size());
     }
 
     /**
-     * Loads movies from the file specified in the constructor.
-     * Each line in the file represents a movie with the format: "title, reviewScore".
-     * Movies are added to the movies list.
+     * Returns the metrics of this database, which are disabled until they are enabled on it.
+     *
+     * @return the metrics
+     */
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets whether every added movie is synced to the storage device before the add returns.
+     * Concurrent adds share one sync. Without it, added movies are only handed to the
+     * operating system, and may be lost if the machine crashes.
+     *
+     * @param syncWrites true to sync every add
+     */
+    public void setSyncWrites(boolean syncWrites) {
+        journal.setSyncOnCommit(syncWrites);
+    }
+
+    /**
+     * Loads movies from the file specified in the constructor, followed by the movies
+     * added since the file was last compacted.
+     * A compaction that was interrupted by a crash is finished first.
+     * The movies and indexes are read from the binary snapshot of the file if it is up to date.
+     * Otherwise the file is parsed, large files in parallel, and a new binary snapshot is written.
      * In case of any errors during loading, an error message is printed to the console.
      */
     private void loadMovies() {
-        File file = new File(fileName);
+        try {
+            journal.recover();
+        } catch (IOException e) {
+            System.out.println("An error occurred while recovering the journal: " + e.getMessage());
+        }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        BinarySnapshot binarySnapshot = new BinarySnapshot(journal.snapshotFile().toPath());
+        boolean opened = false;
+        try {
+            opened = binarySnapshot.open(storageMode);
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the binary snapshot: " + e.getMessage());
+        }
+        // Lines appended while loading are left for the file watcher
+        fileLength = binarySnapshot.sourceSize();
+        if (opened) {
+            store = binarySnapshot.store();
+            titleIndex = binarySnapshot.titleIndex();
+            scoreIndex = binarySnapshot.scoreIndex();
+        } else {
+            boolean loaded;
+            if (fileLength >= ParallelMovieLoader.MIN_PARALLEL_SIZE) {
+                loaded = loadInParallel(journal.snapshotFile(), fileLength);
+            } else if (storageMode == StorageMode.MAPPED) {
+                loaded = mapFile(journal.snapshotFile(), fileLength);
+            } else {
+                loaded = loadFile(journal.snapshotFile(), fileLength);
+            }
+            if (loaded) {
+                try {
+                    binarySnapshot.write(store, titleIndex, scoreIndex);
+                } catch (IOException e) {
+                    System.out.println("An error occurred while writing the binary snapshot: " + e.getMessage());
+                }
+            }
+        }
+        File oldJournal = journal.oldJournalFile();
+        if (oldJournal != null) {
+            loadFile(oldJournal, Long.MAX_VALUE);
+            try {
+                fileLength = journal.writeSnapshot(toLines(store.snapshot()));
+            } catch (IOException e) {
+                System.out.println("An error occurred while compacting the movies: " + e.getMessage());
+            }
+        }
+        if (journal.journalFile().exists()) {
+            loadFile(journal.journalFile(), Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Loads movies from a file.
+     * Each line in the file represents a movie with the format: "title, reviewScore".
+     * Movies are added to the movie store.
+     * In case of any errors during loading, an error message is printed to the console.
+     *
+     * @param file  the file to load movies from
+     * @param limit the number of bytes of the file to load
+     * @return true if the whole file was loaded
+     */
+    private boolean loadFile(File file, long limit) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new LimitedInputStream(new FileInputStream(file), limit), StandardCharsets.UTF_8))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 2) {
-                    String title = parts[0].trim();
-                    String reviewScore = parts[1].trim();
-                    Movie movie = new Movie(title, reviewScore);
-                    movies.add(movie);
+                Movie movie = parseMovie(line);
+                if (movie != null) {
+                    indexMovie(movie);
                 }
             }
+            return true;
+        } catch (IOException e) {
+            System.out.println("An error occurred while loading movies: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Loads a large movie file by parsing and indexing chunks of it on several threads.
+     * In case of any errors during loading, an error message is printed to the console.
+     *
+     * @param file  the file to load
+     * @param limit the number of bytes of the file to load
+     * @return true if the whole file was loaded
+     */
+    private boolean loadInParallel(File file, long limit) {
+        ParallelMovieLoader loader = new ParallelMovieLoader(storageMode);
+        try {
+            loader.load(file.toPath(), limit);
+        } catch (IOException e) {
+            System.out.println("An error occurred while loading movies: " + e.getMessage());
+            return false;
+        }
+        store = loader.store();
+        titleIndex = loader.titleIndex();
+        scoreIndex = loader.scoreIndex();
+        return true;
+    }
+
+    /**
+     * Memory-maps the movie file and indexes the movies in it. The movies stay in the
+     * mapped file, so only the indexes are built on the heap.
+     * In case of any errors during loading, an error message is printed to the console.
+     *
+     * @param file  the file to map
+     * @param limit the number of bytes of the file to map
+     * @return true if the whole file was mapped
+     */
+    private boolean mapFile(File file, long limit) {
+        MappedMovieStore mapped;
+        boolean loaded = true;
+        try {
+            mapped = MappedMovieStore.open(file.toPath(), limit);
         } catch (IOException e) {
             System.out.println("An error occurred while loading movies: " + e.getMessage());
+            mapped = new MappedMovieStore();
+            loaded = false;
+        }
+        for (int id = 0; id < mapped.size(); id++) {
+            titleIndex.add(mapped.getTitle(id));
+            scoreIndex.add(mapped.getScore(id));
         }
+        store = mapped;
+        return loaded;
+    }
+
+    /**
+     * Parses a line with the format: "title, reviewScore".
+     *
+     * @param line the line to parse
+     * @return the movie on the line, or null if the line is not in the expected format
+     */
+    private Movie parseMovie(String line) {
+        String[] parts = line.split(",");
+        if (parts.length != 2) {
+            return null;
+        }
+        String title = parts[0].trim();
+        String reviewScore = parts[1].trim();
+        return new Movie(title, reviewScore);
     }
 
     /**
      * Searches movies in the database by title, based on a given keyword.
      * The search is case-insensitive, meaning it matches titles regardless of case.
+     * Only the titles sharing the keyword's rarest trigram in the title index are checked,
+     * and the matches of recently used keywords are taken from the query cache.
      *
      * @param keyword the keyword to search for in movie titles
      * @return a list of movies whose titles contain the keyword
      */
     public List<Movie> searchByTitle(String keyword) {
-        List<Movie> result = new ArrayList<>();
-        for (Movie movie : movies) {
-            if (movie.getTitle().toLowerCase().contains(keyword.toLowerCase())) {
-                result.add(movie);
-            }
+        long start = metrics.start();
+        String folded = keyword.toLowerCase();
+        int[] ids = queryCache.getTitleIds(folded);
+        int scanned = 0;
+        if (ids == null) {
+            long generation = queryCache.generation();
+            // Counted in the same read as the search, since the postings may grow in between
+            int[] candidates = new int[1];
+            ids = read(() -> {
+                candidates[0] = start != 0 ? titleIndex.candidates(folded) : 0;
+                return titleIndex.search(folded).toArray();
+            });
+            queryCache.putTitleIds(folded, ids, generation);
+            scanned = candidates[0];
         }
+        List<Movie> result = toMovies(ids);
+        metrics.record(metrics.titleSearches(), start, scanned, result.size());
         return result;
     }
 
+    /**
+     * Returns the movies whose titles start with the prefix, ignoring case, with the highest
+     * review scores first. Movies with the same score come in the order they were added.
+     * The best movies for every prefix are kept in the prefix index, so the answer takes the same
+     * short time no matter how many titles start with the prefix, which makes it cheap enough
+     * to call on every keypress. The prefix index is built on the first call.
+     *
+     * @param prefix the start of the titles to find
+     * @param limit  the maximum number of movies to return, at most 10
+     * @return a list of at most limit movies whose titles start with the prefix
+     */
+    public List<Movie> autocomplete(String prefix, int limit) {
+        PrefixIndex index = prefixIndex();
+        return read(() -> {
+            int[] ids = index.top(prefix, limit);
+            List<Movie> result = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                result.add(store.get(id));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Returns the index of title prefixes for autocompletion, building it on first use.
+     * It is built like the fuzzy index, see {@link #fuzzyIndex()}, so that a database that is
+     * never asked to autocomplete does not pay for the best titles of every prefix.
+     *
+     * @return the index of title prefixes
+     */
+    private PrefixIndex prefixIndex() {
+        PrefixIndex index = prefixIndex;
+        if (index != null) {
+            return index;
+        }
+        long stamp = lock.readLock();
+        try {
+            synchronized (prefixIndexLock) {
+                if (prefixIndex == null) {
+                    prefixIndex = new PrefixIndex(titleIndex, scoreIndex);
+                }
+                return prefixIndex;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Searches movies in the database by title, allowing for typos in the keyword.
+     * A title matches if every word of the keyword is within the edit distance of a word
+     * of the title, so "shawshank" finds "The Showshank Redemption".
+     * Short words allow fewer edits: none up to two chars and at most one up to five chars,
+     * since otherwise they would match almost any short word.
+     * <p>
+     * The words of all titles are put into a BK-tree on the first fuzzy search, so only a small
+     * part of the words has to be compared with the keyword. Every word in the tree knows the titles
+     * it appears in, in ascending order, and these lists are merged for the similar words and
+     * intersected across the keyword words, so the work follows the number of ids found and not
+     * the number of titles.
+     *
+     * @param keyword     the keyword to search for in movie titles
+     * @param maxDistance the largest number of inserted, deleted or replaced chars per word, from 0 to 2
+     * @return a list of the matching movies, in the order they were added
+     * @throws IllegalArgumentException if maxDistance is not between 0 and 2
+     */
+    public List<Movie> searchByTitleFuzzy(String keyword, int maxDistance) {
+        if (maxDistance < 0 || maxDistance > FuzzyIndex.MAX_DISTANCE) {
+            throw new IllegalArgumentException("Invalid edit distance: " + maxDistance);
+        }
+        List<String> words = FuzzyIndex.words(keyword);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        FuzzyIndex index = fuzzyIndex();
+        return read(() -> {
+            int[] matches = null;
+            for (String word : words) {
+                int distance = Math.min(maxDistance,
+                        word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : FuzzyIndex.MAX_DISTANCE);
+                int[] wordMatches = index.matchIds(word, distance);
+                matches = matches == null ? wordMatches : FuzzyIndex.intersect(matches, wordMatches);
+                if (matches.length == 0) {
+                    break;
+                }
+            }
+            List<Movie> result = new ArrayList<>(matches.length);
+            for (int id : matches) {
+                result.add(store.get(id));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Returns the index of title words for fuzzy searches, building it on first use.
+     * It is built while holding the read lock, so no movie can be added in the meantime,
+     * and by one thread only, while other searches go on. Movies added after it is published are added to it by {@link #indexMovie(Movie)}.
+     *
+     * @return the index of title words
+     */
+    private FuzzyIndex fuzzyIndex() {
+        FuzzyIndex index = fuzzyIndex;
+        if (index != null) {
+            return index;
+        }
+        long stamp = lock.readLock();
+        try {
+            synchronized (fuzzyIndexLock) {
+                if (fuzzyIndex == null) {
+                    FuzzyIndex built = new FuzzyIndex();
+                    for (int id = 0; id < store.size(); id++) {
+                        built.add(id, store.getTitle(id));
+                    }
+                    fuzzyIndex = built;
+                }
+                return fuzzyIndex;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Searches movies in the database by title and returns the best matches first.
+     * Titles starting with the keyword come first, then titles with a word starting with it,
+     * and then titles that only contain it. Within each of these, movies with a higher review score
+     * come first, and movies with the same score come in the order they were added.
+     * Only the best matches are kept while searching, so memory does not grow with the number of matches.
+     *
+     * @param keyword the keyword to search for in movie titles
+     * @param limit   the maximum number of movies to return
+     * @return a list of at most limit movies whose titles contain the keyword, best first
+     */
+    public List<Movie> searchByTitleRanked(String keyword, int limit) {
+        String folded = keyword.toLowerCase();
+        return read(() -> {
+            BoundedHeap best = new BoundedHeap(Math.max(limit, 0));
+            titleIndex.forEachMatch(folded, (id, kind) -> best.offer(rank(kind, scoreIndex.score(id), id)));
+            long[] ranks = best.toSortedArray();
+            List<Movie> result = new ArrayList<>(ranks.length);
+            for (long rank : ranks) {
+                result.add(store.get(Integer.MAX_VALUE - (int) (rank & Integer.MAX_VALUE)));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Packs how well a movie matches into a single long that sorts better matches higher:
+     * the match kind in the top bits, then the review score, and then the id inverted,
+     * so that earlier movies rank higher. Scores are clamped to 29 bits.
+     *
+     * @param kind  the match kind from the title index
+     * @param score the parsed review score, or {@link ScoreIndex#UNSCORED}
+     * @param id    the id of the movie
+     * @return the rank of the movie
+     */
+    private static long rank(int kind, int score, int id) {
+        long clamped = Math.max(-MAX_RANKED_SCORE - 1, Math.min(score, MAX_RANKED_SCORE))
+                + MAX_RANKED_SCORE + 1;
+        return ((long) kind << 60) | (clamped << 31) | (Integer.MAX_VALUE - id);
+    }
+
+    /**
+     * Streams the movies whose titles contain the keyword, ignoring case, in the order they were added.
+     * A cached result of {@link #searchByTitle(String)} is used if there is one. Otherwise the titles
+     * are matched lazily while the stream is consumed, so {@code skip} and {@code limit} can page
+     * through a large result and the first movies arrive without waiting for the rest. A result that
+     * is used up and small enough for the query cache is stored there.
+     * The search is measured as a title search until the stream is used up or closed.
+     *
+     * @param keyword the keyword to search for in movie titles
+     * @return a stream of the movies whose titles contain the keyword
+     */
+    public Stream<Movie> streamByTitle(String keyword) {
+        long start = metrics.start();
+        String folded = keyword.toLowerCase();
+        int[] cached = queryCache.getTitleIds(folded);
+        if (cached != null) {
+            return toMovieStream(Spliterators.spliterator(cached, SPLITERATOR_CHARACTERISTICS),
+                    metrics.titleSearches(), start, 0);
+        }
+        long generation = queryCache.generation();
+        int[] candidates = new int[1];
+        Spliterator.OfInt ids = read(() -> {
+            candidates[0] = start != 0 ? titleIndex.candidates(folded) : 0;
+            return Spliterators.spliteratorUnknownSize(titleIndex.matchIds(folded), SPLITERATOR_CHARACTERISTICS);
+        });
+        int scanned = candidates[0];
+        ids = new CollectingIds(ids, queryCache.maxResultLength(),
+                found -> queryCache.putTitleIds(folded, found, generation));
+        return toMovieStream(ids, metrics.titleSearches(), start, scanned);
+    }
+
     /**
      * Searches movies in the database by review score, based on a given minimum review score.
+     * The matches of recently used minimum review scores are taken from the query cache.
      *
      * @param minReviewScore the minimum review score to search for
      * @return a list of movies with a review score greater than or equal to the specified minimum
      */
     public List<Movie> searchByReviewScore(int minReviewScore) {
-        List<Movie> result = new ArrayList<>();
-        for (Movie movie : movies) {
-            String reviewScoreString = movie.getReviewScore();
-            String[] reviewScores = reviewScoreString.split("/");
-            if (reviewScores.length == 2) {
-                int reviewScore = Integer.parseInt(reviewScores[0].trim());
-                if (reviewScore >= minReviewScore) {
-                    result.add(movie);
+        long start = metrics.start();
+        int[] ids = queryCache.getScoreIds(minReviewScore);
+        int scanned = 0;
+        if (ids == null) {
+            long generation = queryCache.generation();
+            ids = findScoreIds(minReviewScore);
+            queryCache.putScoreIds(minReviewScore, ids, generation);
+            scanned = ids.length;
+        }
+        List<Movie> result = toMovies(ids);
+        metrics.record(metrics.reviewScoreSearches(), start, scanned, result.size());
+        return result;
+    }
+
+    /**
+     * Finds the ids of the movies with a review score of at least the minimum, in the order they were added.
+     *
+     * @param minReviewScore the minimum review score
+     * @return the ids of the movies
+     */
+    private int[] findScoreIds(int minReviewScore) {
+        return read(() -> {
+            int[] found = new int[scoreIndex.count(minReviewScore, Integer.MAX_VALUE)];
+            PrimitiveIterator.OfInt range = scoreIndex.rangeIds(minReviewScore, Integer.MAX_VALUE);
+            for (int i = 0; i < found.length; i++) {
+                found[i] = range.nextInt();
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the query cache used by the searches.
+     *
+     * @return the current counters of the query cache
+     */
+    public CacheStats getCacheStats() {
+        return queryCache.stats();
+    }
+
+    /**
+     * Streams the movies with a review score in the specified range, in the order they were added.
+     * The movies are taken lazily from the score index, so no intermediate list is built.
+     * Without a maximum a cached result of {@link #searchByReviewScore(int)} is used if there is one,
+     * and a result that is used up and small enough for the query cache is stored there.
+     * The search is measured as a review score search until the stream is used up or closed.
+     *
+     * @param minReviewScore the lowest review score to include
+     * @param maxReviewScore the highest review score to include
+     * @return a stream of the movies in the range
+     */
+    public Stream<Movie> streamByReviewScore(int minReviewScore, int maxReviewScore) {
+        long start = metrics.start();
+        boolean cacheable = maxReviewScore == Integer.MAX_VALUE;
+        if (cacheable) {
+            int[] cached = queryCache.getScoreIds(minReviewScore);
+            if (cached != null) {
+                return toMovieStream(Spliterators.spliterator(cached, SPLITERATOR_CHARACTERISTICS),
+                        metrics.reviewScoreSearches(), start, 0);
+            }
+        }
+        long generation = queryCache.generation();
+        Spliterator.OfInt ids = read(() -> Spliterators.spliterator(
+                scoreIndex.rangeIds(minReviewScore, maxReviewScore),
+                scoreIndex.count(minReviewScore, maxReviewScore), SPLITERATOR_CHARACTERISTICS));
+        long scanned = ids.estimateSize();
+        if (cacheable) {
+            ids = new CollectingIds(ids, queryCache.maxResultLength(),
+                    found -> queryCache.putScoreIds(minReviewScore, found, generation));
+        }
+        return toMovieStream(ids, metrics.reviewScoreSearches(), start, scanned);
+    }
+
+    /**
+     * Streams the movies with the highest review scores, best first.
+     * Movies with the same review score come in the order they were added.
+     *
+     * @param limit the maximum number of movies to return
+     * @return a stream of at most limit movies
+     */
+    public Stream<Movie> topByReviewScore(int limit) {
+        return read(() -> toMovieStream(Spliterators.spliterator(scoreIndex.topIds(),
+                scoreIndex.count(Integer.MIN_VALUE, Integer.MAX_VALUE), SPLITERATOR_CHARACTERISTICS)))
+                .limit(limit);
+    }
+
+    /**
+     * Reads the movies with the specified ids from the store.
+     *
+     * @param ids the ids of the movies
+     * @return a list of the movies, in the order of the ids
+     */
+    private List<Movie> toMovies(int[] ids) {
+        return read(() -> {
+            List<Movie> result = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                result.add(store.get(id));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Wraps movie ids into a lazy stream of movies.
+     * Every movie is read from the store on its own, so the stream holds no lock.
+     *
+     * @param ids the ids of the movies
+     * @return a stream of the movies with the ids
+     */
+    private Stream<Movie> toMovieStream(Spliterator.OfInt ids) {
+        return StreamSupport.intStream(ids, false).mapToObj(id -> read(() -> store.get(id)));
+    }
+
+    /**
+     * Wraps movie ids into a lazy stream of movies, like {@link #toMovieStream(Spliterator.OfInt)},
+     * and records the search that found them once the stream is used up or closed.
+     *
+     * @param ids       the ids of the movies
+     * @param operation the metrics of the search
+     * @param start     the value returned by {@link DatabaseMetrics#start()} when the search started
+     * @param scanned   the number of rows the search looked at
+     * @return a stream of the movies with the ids
+     */
+    private Stream<Movie> toMovieStream(Spliterator.OfInt ids, OperationMetrics operation, long start, long scanned) {
+        if (start == 0) {
+            return toMovieStream(ids);
+        }
+        MeasuredIds measured = new MeasuredIds(ids, operation, start, scanned);
+        return toMovieStream(measured).onClose(measured::record);
+    }
+
+    /**
+     * Runs a query against the store and the indexes.
+     * The query first runs without a lock. Movies are only ever appended, so the query can at
+     * worst see an add that is half done, and in that case, which is detected by the stamp,
+     * it is run again under the read lock. A half done add can also make the query fail with an
+     * exception a torn read produces: an index past the end of an array, a negative length, an
+     * iterator in an unexpected state, or a null slot that was seen before its movie was written.
+     * Only those are retried, and only when the stamp shows that an add did run; any other failure,
+     * and every Error, is passed on as it is.
+     *
+     * @param query the query to run, which must not change anything
+     * @param <T>   the type of the result
+     * @return the result of the query
+     */
+    private <T> T read(Supplier<T> query) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (IndexOutOfBoundsException | NegativeArraySizeException | IllegalStateException
+                    | NullPointerException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
                 }
+                // An add changed the indexes while they were read, so the failure is thrown away
             }
         }
-        return result;
+
+        stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
 
     /**
      * Adds a new movie to the database.
-     * The movie is added to the movies list and then saved to the file.
+     * The movie is appended to the journal and then added to the movies list.
      *
      * @param movie the movie to be added to the database
+     * @throws UncheckedIOException if the movie cannot be written to the journal, in which case it is not added
      */
     public void addMovie(Movie movie) {
+        saveMovies(Collections.singletonList(formatMovie(movie)));
+    }
+
+    /**
+     * Adds several new movies to the database at once.
+     * The review scores are formatted the same way as by {@link #addMovie(Movie)}, and all
+     * movies are appended to the journal with a single flush.
+     * Nothing is added if any of the movies is invalid.
+     *
+     * @param movies the movies to be added to the database
+     * @throws IllegalArgumentException if a title is empty or a title or review score would
+     *                                  not fit on a single line of the file
+     * @throws UncheckedIOException     if the movies cannot be written to the journal, in which case none are added
+     */
+    public void addMovies(Collection<Movie> movies) {
+        List<Movie> batch = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            Movie newMovie = formatMovie(movie);
+            if (!isValid(newMovie)) {
+                throw new IllegalArgumentException("Invalid movie: " + movieToString(newMovie));
+            }
+            batch.add(newMovie);
+        }
+        saveMovies(batch);
+    }
+
+    /**
+     * Imports all movies from a file with the same format as the database file.
+     * The file is read as a stream and the movies are added in batches, where every batch
+     * is appended to the journal with a single flush. Lines that are not in the expected format,
+     * or that have an empty title or a review score that is not a number, are skipped.
+     * In case of any errors during the import, an error message is printed to the console,
+     * and the import stops after the movies read so far, or before the batch that could not be saved.
+     *
+     * @param fileName the file path to import movies from
+     * @return the number of imported movies
+     */
+    public int importMovies(String fileName) {
+        int imported = 0;
+        int skipped = 0;
+        List<Movie> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+
+        try {
+            try (BufferedReader reader = new BufferedReader(new FileReader(fileName, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Movie movie = parseMovie(line);
+                    if (movie == null || !isValid(movie)) {
+                        skipped++;
+                        continue;
+                    }
+                    batch.add(movie);
+                    if (batch.size() == IMPORT_BATCH_SIZE) {
+                        saveMovies(batch);
+                        imported += batch.size();
+                        batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("An error occurred while importing movies: " + e.getMessage());
+            }
+
+            if (!batch.isEmpty()) {
+                saveMovies(batch);
+                imported += batch.size();
+            }
+        } catch (UncheckedIOException e) {
+            System.out.println("An error occurred while importing movies: " + e.getCause().getMessage());
+        }
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " invalid lines while importing movies.");
+        }
+        return imported;
+    }
+
+    /**
+     * Creates a copy of a movie with its review score formatted to "X/5".
+     *
+     * @param movie the movie entered by the user
+     * @return the movie to store
+     */
+    private Movie formatMovie(Movie movie) {
+        return new Movie(movie.getTitle(), formatReviewScore(movie.getReviewScore()) + "/5");
+    }
+
+    /**
+     * Checks that a movie can be stored and read back from the file as the same movie.
+     *
+     * @param movie the movie to check
+     * @return true if the title is not empty, neither part contains a comma or a line break,
+     * and the review score has a number before the slash
+     */
+    private boolean isValid(Movie movie) {
+        String title = movie.getTitle();
         String reviewScore = movie.getReviewScore();
-        String formattedReviewScore = formatReviewScore(reviewScore) + "/5";
-        Movie newMovie = new Movie(movie.getTitle(), formattedReviewScore);
-        movies.add(newMovie);
-        saveMovies();
+        return !title.trim().isEmpty()
+                && title.equals(title.trim())
+                && reviewScore.equals(reviewScore.trim())
+                && title.indexOf(',') < 0 && reviewScore.indexOf(',') < 0
+                && title.indexOf('\n') < 0 && title.indexOf('\r') < 0
+                && reviewScore.indexOf('\n') < 0 && reviewScore.indexOf('\r') < 0
+                && ScoreIndex.parseReviewScore(reviewScore) != ScoreIndex.UNSCORED;
+    }
+
+    /**
+     * Adds a movie to the movie store and to the title and score indexes, to the prefix index
+     * once it has been built at the end of loading, and to the fuzzy index once it has been built.
+     * The id of the movie in the store is its id in the indexes.
+     *
+     * @param movie the movie to add
+     */
+    private void indexMovie(Movie movie) {
+        store.add(movie);
+        titleIndex.add(movie.getTitle());
+        scoreIndex.add(movie.getReviewScore());
+        if (prefixIndex != null) {
+            prefixIndex.add(store.size() - 1);
+        }
+        if (fuzzyIndex != null) {
+            fuzzyIndex.add(store.size() - 1, movie.getTitle());
+        }
     }
 
 
@@ -118,21 +826,317 @@ public class MovieDatabase {
     }
 
     /**
-     * Saves the movies from the movies list back to the file specified in the constructor.
-     * The existing contents of the file are overwritten.
-     * In case of any errors during saving, an error message is printed to the console.
+     * Appends movies to the journal with a single flush, and then adds them to the movie store
+     * and the indexes, so that no search sees a movie that has not been saved.
+     * Starts a compaction in the background if the journal has grown large compared to the file.
+     * The flush happens without holding the lock, so that it can be shared with other adds.
+     *
+     * @param batch the movies to save
+     * @throws UncheckedIOException if the movies cannot be written to the journal, in which case
+     *                              none of them are added, although some may still be read back
+     *                              from the journal after a restart
+     */
+    private void saveMovies(List<Movie> batch) {
+        long start = metrics.start();
+        try {
+            commitAndIndex(batch, appendToJournal(batch));
+        } catch (IOException e) {
+            throw new UncheckedIOException("An error occurred while saving the movies: " + e.getMessage(), e);
+        }
+        metrics.record(metrics.saves(), start, 0, batch.size());
+    }
+
+    /**
+     * Appends movies to the journal without flushing it. The batch then counts as not indexed
+     * until {@link #commitAndIndex(List, long)} is called for it, which keeps compactions from
+     * starting, since they would move the journal with the movies aside without copying them.
+     *
+     * @param batch the movies to append
+     * @return the sequence number of the last movie in the journal
+     * @throws IOException if the movies cannot be written to the journal
+     */
+    private long appendToJournal(List<Movie> batch) throws IOException {
+        long sequence = 0;
+        long stamp = lock.writeLock();
+        try {
+            for (Movie movie : batch) {
+                sequence = journal.append(movieToString(movie));
+            }
+            unindexedBatches++;
+            return sequence;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Flushes the journal up to a batch appended by {@link #appendToJournal(List)}, and adds
+     * the batch to the store and the indexes if that worked.
+     *
+     * @param batch    the appended movies
+     * @param sequence the sequence number of the last movie in the journal
+     * @throws IOException if the journal cannot be flushed, in which case the movies are not added
+     */
+    private void commitAndIndex(List<Movie> batch, long sequence) throws IOException {
+        IOException failure = null;
+        try {
+            journal.commit(sequence);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            unindexedBatches--;
+            if (failure == null) {
+                indexBatch(batch);
+            }
+            if (unindexedBatches == 0
+                    && journal.records() >= Math.max(MIN_COMPACTION_RECORDS, store.size() / 2)) {
+                startCompaction();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Adds movies to the store and the indexes, and drops the cached results they are part of.
+     * Must be called while holding the write lock.
+     *
+     * @param batch the movies to add
+     */
+    private void indexBatch(List<Movie> batch) {
+        for (Movie movie : batch) {
+            indexMovie(movie);
+        }
+        invalidateQueryCache(batch);
+    }
+
+    /**
+     * Drops the cached search results that the added movies are part of.
+     * A batch with more movies than there can be cached results simply clears the cache.
+     * Must be called while holding the write lock.
+     *
+     * @param batch the added movies
+     */
+    private void invalidateQueryCache(List<Movie> batch) {
+        if (batch.size() > QUERY_CACHE_ENTRIES) {
+            queryCache.clear();
+            return;
+        }
+        for (Movie movie : batch) {
+            queryCache.invalidate(movie.getTitle(), ScoreIndex.parseReviewScore(movie.getReviewScore()));
+        }
+    }
+
+    /**
+     * Folds the journal into the file specified in the constructor, and waits until it is done.
+     * The file is replaced atomically, so a crash never leaves it half-written.
+     * In case of any errors during compaction, an error message is printed to the console.
+     */
+    public void compact() {
+        awaitCompaction();
+        while (true) {
+            long stamp = lock.writeLock();
+            try {
+                if (unindexedBatches == 0) {
+                    startCompaction();
+                    break;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            // Adds that are in the journal but not yet in the store finish in a moment
+            Thread.yield();
+        }
+        awaitCompaction();
+    }
+
+    /**
+     * Starts following the file specified in the constructor. Lines that other processes
+     * append to it are picked up within about a second, and only the new lines are read and indexed.
+     * Lines must be appended whole, each ending with a line break, and the file should be
+     * opened for every append, since compactions replace it with a new file.
+     * In case of any errors while starting, an error message is printed to the console.
+     */
+    public void watchFile() {
+        synchronized (tailLock) {
+            if (tailer != null) {
+                return;
+            }
+            MovieFileTailer newTailer = new MovieFileTailer(journal.snapshotFile().toPath(), fileLength, tailLock,
+                    this::addAppendedMovies);
+            try {
+                newTailer.start();
+            } catch (IOException e) {
+                System.out.println("An error occurred while watching the movie file: " + e.getMessage());
+                newTailer.close();
+                return;
+            }
+            tailer = newTailer;
+        }
+    }
+
+    /**
+     * Adds movies that another process appended to the file. They are already in the file,
+     * so they are only written to the journal while a compaction is running, since the file
+     * that is being replaced may not hold them anymore.
+     * Like other adds, they are only added once they are in the journal.
+     * Lines that are not in the expected format are skipped.
+     *
+     * @param lines the appended lines
+     * @throws UncheckedIOException if the movies cannot be written to the journal, in which case
+     *                              none of them are added and the file tailer reads them again later
+     */
+    private void addAppendedMovies(List<String> lines) {
+        List<Movie> batch = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            Movie movie = parseMovie(line);
+            if (movie != null) {
+                batch.add(movie);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = metrics.start();
+        boolean indexed = false;
+        if (!journalAppendedMovies) {
+            long stamp = lock.writeLock();
+            try {
+                // A compaction may have started since the check, and then the movies need the journal after all
+                if (!journalAppendedMovies) {
+                    indexBatch(batch);
+                    indexed = true;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        if (!indexed) {
+            try {
+                commitAndIndex(batch, appendToJournal(batch));
+            } catch (IOException e) {
+                throw new UncheckedIOException("An error occurred while saving the appended movies: " + e.getMessage(), e);
+            }
+        }
+        metrics.record(metrics.saves(), start, 0, batch.size());
+    }
+
+    /**
+     * Stops following the file and the metrics reports, waits for a running compaction
+     * and closes the journal.
      */
-    private void saveMovies() {
-        File file = new File(fileName);
+    @Override
+    public void close() {
+        MovieFileTailer stopped;
+        synchronized (tailLock) {
+            stopped = tailer;
+            tailer = null;
+        }
+        if (stopped != null) {
+            stopped.close();
+        }
+        metrics.close();
+        awaitCompaction();
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("An error occurred while closing the journal: " + e.getMessage());
+        }
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, false))) {
-            for (Movie movie : movies) {
-                writer.write(movieToString(movie));
-                writer.newLine();
+    /**
+     * Moves the journal aside and writes a new file in the background, unless a compaction
+     * is already running. Must be called while holding the write lock.
+     * The movies are copied when the journal is moved aside, so movies added during
+     * the compaction go to the new journal only.
+     * <p>
+     * Nothing is done while the store maps the file on a platform where a mapped file cannot be
+     * replaced. The added movies then stay in the journal, and the file is compacted after a start
+     * that reads the binary snapshot instead of mapping the file.
+     */
+    private void startCompaction() {
+        if (compaction != null && !compaction.isDone()) {
+            return;
+        }
+        if (MappedMovieStore.MAPPINGS_LOCK_FILES && store.mapsFile()) {
+            if (!compactionRefused) {
+                compactionRefused = true;
+                System.out.println("An error occurred while compacting the movies: The movie file is memory-mapped "
+                        + "and cannot be replaced on this platform. The added movies stay in the journal.");
             }
+            return;
+        }
+        MovieStore snapshot;
+        try {
+            journal.rotate();
+            snapshot = store.snapshot();
         } catch (IOException e) {
-            System.out.println("An error occurred while saving the movie: " + e.getMessage());
+            System.out.println("An error occurred while compacting the movies: " + e.getMessage());
+            return;
+        }
+        journalAppendedMovies = true;
+
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "movie-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        compaction = compactor.submit(() -> {
+            synchronized (tailLock) {
+                try {
+                    if (tailer != null) {
+                        fileLength = tailer.replace(() -> journal.writeSnapshot(toLines(snapshot)));
+                    } else {
+                        fileLength = journal.writeSnapshot(toLines(snapshot));
+                    }
+                } catch (IOException e) {
+                    System.out.println("An error occurred while compacting the movies: " + e.getMessage());
+                } finally {
+                    journalAppendedMovies = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a running compaction to finish.
+     */
+    private void awaitCompaction() {
+        Future<?> running = compaction;
+        if (running == null) {
+            return;
+        }
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("An error occurred while compacting the movies: " + e.getCause());
+        }
+    }
+
+    /**
+     * Converts the movies of a store into the lines of a movie file.
+     *
+     * @param movies the movies to convert
+     * @return the lines, converted lazily while iterating
+     */
+    private Iterable<String> toLines(MovieStore movies) {
+        return () -> IntStream.range(0, movies.size())
+                .mapToObj(id -> movieToString(movies.get(id)))
+                .iterator();
     }
 
     /**
@@ -144,4 +1148,179 @@ public class MovieDatabase {
     private String movieToString(Movie movie) {
         return movie.getTitle() + "," + movie.getReviewScore();
     }
+
+    /**
+     * Passes on the ids of a search result while keeping a copy of them, as long as there are no
+     * more than a maximum, and hands the copy over once the ids are used up. A result that turns out
+     * too large is not copied any further, so a stream over it stays as lazy as without the copy.
+     */
+    private static final class CollectingIds implements Spliterator.OfInt {
+        private final Spliterator.OfInt ids;
+        private final int maxLength;
+        private final Consumer<int[]> done;
+        private IntList collected = new IntList();
+
+        CollectingIds(Spliterator.OfInt ids, int maxLength, Consumer<int[]> done) {
+            this.ids = ids;
+            this.maxLength = maxLength;
+            this.done = done;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (collected == null) {
+                return ids.tryAdvance(action);
+            }
+            if (ids.tryAdvance((int id) -> {
+                collect(id);
+                action.accept(id);
+            })) {
+                return true;
+            }
+            finish();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            if (collected == null) {
+                ids.forEachRemaining(action);
+                return;
+            }
+            ids.forEachRemaining((int id) -> {
+                collect(id);
+                action.accept(id);
+            });
+            finish();
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return ids.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return ids.characteristics();
+        }
+
+        private void collect(int id) {
+            if (collected != null) {
+                if (collected.size() == maxLength) {
+                    collected = null;
+                } else {
+                    collected.add(id);
+                }
+            }
+        }
+
+        private void finish() {
+            if (collected != null) {
+                done.accept(collected.toArray());
+                collected = null;
+            }
+        }
+    }
+
+    /**
+     * Passes on the ids of a search result and records the search once, when the ids are used up
+     * or the stream over them is closed, with the number of ids that were passed on.
+     */
+    private final class MeasuredIds implements Spliterator.OfInt {
+        private final Spliterator.OfInt ids;
+        private final OperationMetrics operation;
+        private final long start;
+        private final long scanned;
+        private long returned;
+        private boolean recorded;
+
+        MeasuredIds(Spliterator.OfInt ids, OperationMetrics operation, long start, long scanned) {
+            this.ids = ids;
+            this.operation = operation;
+            this.start = start;
+            this.scanned = scanned;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (ids.tryAdvance(action)) {
+                returned++;
+                return true;
+            }
+            record();
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            ids.forEachRemaining((int id) -> {
+                returned++;
+                action.accept(id);
+            });
+            record();
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return ids.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return ids.characteristics();
+        }
+
+        void record() {
+            if (!recorded) {
+                recorded = true;
+                metrics.record(operation, start, scanned, returned);
+            }
+        }
+    }
+
+    /**
+     * Reads no more than a given number of bytes from another stream.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
 }
@@ -0,0 +1,246 @@
+package moviedatabase.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Follows a movie file that other processes append lines to, and passes on every complete line
+ * appended after a byte offset. Only the new bytes are read, so the file is never read again.
+ * <p>
+ * A background thread waits for changes in the directory of the file with a WatchService,
+ * and also checks the file every second, since some file systems do not report changes.
+ * A line is only passed on once its line break has been written, so a line that is still being
+ * appended is picked up on a later check. A batch of lines that the owner fails to take is
+ * read again on the next check. Lines are decoded as UTF-8, like the rest of the movie file.
+ * <p>
+ * Every check holds a lock given by the owner. When the owner replaces the file, it does so
+ * through {@link #replace(Rewrite)}, which keeps the old file open, so that lines appended to it
+ * until it was replaced are still passed on.
+ */
+final class MovieFileTailer implements AutoCloseable {
+    private static final long CHECK_MILLIS = 1000;
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final int BATCH_SIZE = 10_000;
+
+    private final Path path;
+    private final Object lock;
+    private final Consumer<List<String>> sink;
+    private long offset;
+    private WatchService watchService;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Constructs a MovieFileTailer.
+     *
+     * @param path   the path of the movie file
+     * @param offset the number of bytes of the file that have already been read
+     * @param lock   the lock to hold while reading and passing on lines
+     * @param sink   receives the appended lines in batches, without line separators
+     */
+    MovieFileTailer(Path path, long offset, Object lock, Consumer<List<String>> sink) {
+        this.path = path;
+        this.offset = offset;
+        this.lock = lock;
+        this.sink = sink;
+    }
+
+    /**
+     * Starts following the file on a background thread.
+     *
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    void start() throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        running = true;
+        thread = new Thread(this::run, "movie-file-tailer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads the complete lines appended since the last check and passes them on.
+     * If the file has become shorter than the offset, it was replaced by something else than
+     * the owner, and the offset is moved to its end, since it cannot be told which lines are new.
+     *
+     * @return the number of lines passed on
+     * @throws IOException          if the file cannot be read
+     * @throws UncheckedIOException if the owner fails to take a batch, which is then read again next time
+     */
+    int poll() throws IOException {
+        synchronized (lock) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < offset) {
+                    System.out.println("The movie file became shorter and is read again from its end.");
+                    offset = size;
+                    return 0;
+                }
+                return read(channel, size);
+            } catch (NoSuchFileException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Replaces the file while no check runs. The old file is kept open while it is replaced,
+     * and the lines appended to it since the last check are passed on afterwards, so none are missed.
+     * Following then goes on from the end of the new file, even if the owner fails to take those
+     * lines, since the offset in the old file means nothing in the new one.
+     *
+     * @param rewrite writes the new file and moves it into place
+     * @return the size of the new file in bytes
+     * @throws IOException if the file cannot be replaced or the old file cannot be read
+     */
+    long replace(Rewrite rewrite) throws IOException {
+        synchronized (lock) {
+            FileChannel old = null;
+            try {
+                old = FileChannel.open(path, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // Nothing can have been appended to a file that does not exist
+            }
+            long size = -1;
+            try {
+                size = rewrite.write();
+                if (old != null) {
+                    read(old, old.size());
+                }
+                return size;
+            } finally {
+                if (size >= 0) {
+                    offset = size;
+                }
+                if (old != null) {
+                    old.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops following the file and waits for the background thread to end.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.out.println("An error occurred while closing the file watcher: " + e.getMessage());
+            }
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for changes and checks the file until the tailer is closed.
+     */
+    private void run() {
+        while (running) {
+            try {
+                WatchKey key = watchService.poll(CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                poll();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println("An error occurred while reading appended movies: " + e.getMessage());
+            } catch (UncheckedIOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes a new movie file in place of the old one.
+     */
+    interface Rewrite {
+        /**
+         * Writes the new file and moves it into place.
+         *
+         * @return the size of the new file in bytes
+         * @throws IOException if the file cannot be written
+         */
+        long write() throws IOException;
+    }
+
+    /**
+     * Reads the complete lines between the offset and the specified size, in batches.
+     * The offset moves past every batch once it has been passed on.
+     *
+     * @param channel the movie file
+     * @param size    the size of the file
+     * @return the number of lines passed on
+     * @throws IOException if the file cannot be read
+     */
+    private int read(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        List<String> batch = new ArrayList<>();
+        long position = offset;
+        long lineStart = offset;
+        int lines = 0;
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                batch.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                line.reset();
+                lineStart = position + i + 1;
+                if (batch.size() == BATCH_SIZE) {
+                    sink.accept(batch);
+                    lines += batch.size();
+                    offset = lineStart;
+                    batch = new ArrayList<>();
+                }
+            }
+            position += read;
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+            lines += batch.size();
+        }
+        offset = lineStart;
+        return lines;
+    }
+}
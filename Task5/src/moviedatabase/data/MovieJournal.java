@@ -0,0 +1,344 @@
+package moviedatabase.data;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An append-only journal that sits next to a snapshot file of movie lines.
+ * New lines are appended to the journal instead of rewriting the snapshot, and
+ * compaction later folds the journal into a new snapshot.
+ * <p>
+ * The files used for a snapshot "Movies.txt" are:
+ * <ul>
+ *     <li>"Movies.txt.journal" - the journal that new lines are appended to</li>
+ *     <li>"Movies.txt.journal.old" - the journal being folded into the snapshot by a compaction</li>
+ *     <li>"Movies.txt.compacted" - a complete new snapshot that replaces both of the above</li>
+ *     <li>"Movies.txt.tmp" - a new snapshot that is still being written</li>
+ * </ul>
+ * The compacted snapshot only gets its name once it has been fully written and synced,
+ * and the old journal is deleted before the compacted snapshot is moved into place.
+ * That way a crash at any point leaves files that {@link #recover()} can put back together
+ * without losing or duplicating lines.
+ */
+final class MovieJournal {
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Path oldJournalPath;
+    private final Path compactedPath;
+    private final Path tempPath;
+    private final Object syncLock;
+    private final LongAdder bytesWritten;
+
+    private volatile boolean syncOnCommit;
+    private FileChannel channel;
+    private Writer writer;
+    private long appended;
+    private long synced;
+    private int records;
+
+    /**
+     * Constructs a MovieJournal for the specified snapshot file.
+     * The journal is not opened until {@link #recover()} is called.
+     *
+     * @param snapshotPath the path of the snapshot file
+     */
+    MovieJournal(Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = sibling(".journal");
+        this.oldJournalPath = sibling(".journal.old");
+        this.compactedPath = sibling(".compacted");
+        this.tempPath = sibling(".tmp");
+        this.syncLock = new Object();
+        this.bytesWritten = new LongAdder();
+    }
+
+    /**
+     * Sets whether a commit also forces the journal to the storage device.
+     * Without it a commit only hands the lines to the operating system.
+     *
+     * @param syncOnCommit true to sync the journal on every commit
+     */
+    void setSyncOnCommit(boolean syncOnCommit) {
+        this.syncOnCommit = syncOnCommit;
+    }
+
+    /**
+     * Finishes a compaction that was interrupted after its new snapshot was complete,
+     * cuts off a half-written last line of the journals and opens the journal for appending.
+     * If an old journal is left afterwards, the interrupted compaction has to be redone by
+     * reading the snapshot and the old journal and passing them to {@link #writeSnapshot(Iterable)}.
+     *
+     * @throws IOException if the files cannot be repaired or the journal cannot be opened
+     */
+    void recover() throws IOException {
+        Files.deleteIfExists(tempPath);
+        if (Files.exists(compactedPath)) {
+            // The compacted snapshot was complete, so it already holds the old journal
+            Files.deleteIfExists(oldJournalPath);
+            Files.move(compactedPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.exists(oldJournalPath)) {
+            truncateTornLine(oldJournalPath);
+        }
+        if (Files.exists(journalPath)) {
+            records = truncateTornLine(journalPath);
+        }
+        open();
+    }
+
+    /**
+     * Returns the snapshot file.
+     *
+     * @return the snapshot file
+     */
+    File snapshotFile() {
+        return snapshotPath.toFile();
+    }
+
+    /**
+     * Returns the old journal left by an interrupted compaction.
+     *
+     * @return the old journal, or null if there is none
+     */
+    File oldJournalFile() {
+        return Files.exists(oldJournalPath) ? oldJournalPath.toFile() : null;
+    }
+
+    /**
+     * Returns the journal that new lines are appended to.
+     *
+     * @return the journal file
+     */
+    File journalFile() {
+        return journalPath.toFile();
+    }
+
+    /**
+     * Appends a line to the journal. The line is not guaranteed to reach the file
+     * until {@link #commit(long)} is called with the returned sequence number.
+     *
+     * @param line the line to append, without a line separator
+     * @return the sequence number of the appended line
+     * @throws IOException if the line cannot be written
+     */
+    synchronized long append(String line) throws IOException {
+        if (writer == null) {
+            throw new IOException("The journal is not open");
+        }
+        writer.write(line);
+        writer.write(System.lineSeparator());
+        records++;
+        return ++appended;
+    }
+
+    /**
+     * Makes sure that every line up to the specified sequence number has been written,
+     * and synced if sync on commit is enabled.
+     * Lines appended by other threads in the meantime are committed by the same flush,
+     * so concurrent writers share one sync instead of waiting for one each.
+     *
+     * @param sequence the sequence number returned by {@link #append(String)}
+     * @throws IOException if the journal cannot be written
+     */
+    void commit(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                writer.flush();
+                target = appended;
+            }
+            if (syncOnCommit) {
+                channel.force(false);
+            }
+            synced = target;
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to the journal and to compacted snapshots so far.
+     * Lines are counted once they have been flushed.
+     *
+     * @return the number of bytes written
+     */
+    long bytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Returns the number of lines in the journal that new lines are appended to.
+     *
+     * @return the number of journal lines
+     */
+    synchronized int records() {
+        return records;
+    }
+
+    /**
+     * Starts a compaction by moving the current journal aside and opening a new, empty one.
+     * Every line appended before this call belongs to the old journal.
+     *
+     * @throws IOException if the journal cannot be rotated
+     */
+    void rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (writer == null) {
+                    throw new IOException("The journal is not open");
+                }
+                if (Files.exists(oldJournalPath)) {
+                    throw new IOException("A compaction is already in progress");
+                }
+                writer.flush();
+                channel.force(false);
+                writer.close();
+                synced = appended;
+                records = 0;
+                Files.move(journalPath, oldJournalPath, StandardCopyOption.ATOMIC_MOVE);
+                open();
+            }
+        }
+    }
+
+    /**
+     * Finishes a compaction by writing a new snapshot holding the old snapshot and the old journal.
+     * The lines must hold everything that was in the database when {@link #rotate()} was called.
+     *
+     * @param lines the lines of the new snapshot
+     * @return the size of the new snapshot in bytes
+     * @throws IOException if the snapshot cannot be written
+     */
+    long writeSnapshot(Iterable<String> lines) throws IOException {
+        long size;
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer snapshotWriter = new BufferedWriter(new OutputStreamWriter(
+                    new CountingOutputStream(Channels.newOutputStream(out), bytesWritten), StandardCharsets.UTF_8));
+            for (String line : lines) {
+                snapshotWriter.write(line);
+                snapshotWriter.write(System.lineSeparator());
+            }
+            snapshotWriter.flush();
+            size = out.size();
+            out.force(true);
+        }
+        Files.move(tempPath, compactedPath, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(oldJournalPath);
+        Files.move(compactedPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * Flushes, syncs and closes the journal.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (writer != null) {
+                    writer.flush();
+                    channel.force(false);
+                    writer.close();
+                    writer = null;
+                    synced = appended;
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the journal for appending, creating it if needed.
+     *
+     * @throws IOException if the journal cannot be opened
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new CountingOutputStream(Channels.newOutputStream(channel), bytesWritten), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cuts off a last line that was only partly written before a crash,
+     * so that it is neither read nor continued by the next append.
+     *
+     * @param path the journal to repair
+     * @return the number of complete lines in the journal
+     * @throws IOException if the journal cannot be read or truncated
+     */
+    private static int truncateTornLine(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long end = 0;
+            int lines = 0;
+            byte[] buffer = new byte[8192];
+            long position = 0;
+            int read;
+            while ((read = file.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        end = position + i + 1;
+                        lines++;
+                    }
+                }
+                position += read;
+            }
+            if (end < file.length()) {
+                file.setLength(end);
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Returns the path of a file next to the snapshot, named after it with the specified suffix.
+     *
+     * @param suffix the suffix to add to the snapshot file name
+     * @return the path of the file
+     */
+    private Path sibling(String suffix) {
+        return snapshotPath.resolveSibling(snapshotPath.getFileName() + suffix);
+    }
+
+    /**
+     * Passes bytes on to another stream and counts them.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final LongAdder count;
+
+        CountingOutputStream(OutputStream out, LongAdder count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.add(len);
+        }
+    }
+}
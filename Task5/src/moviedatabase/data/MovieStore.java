@@ -0,0 +1,77 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+
+/**
+ * Storage for the rows of a movie database.
+ * Every movie gets an id when it is added, which is the number of movies added before it.
+ * Movies are never removed, so an id stays valid once it has been handed out.
+ */
+interface MovieStore {
+    /**
+     * Creates an empty store for the specified storage mode.
+     *
+     * @param storageMode how the movies are kept in memory
+     * @return an empty store
+     */
+    static MovieStore create(StorageMode storageMode) {
+        switch (storageMode) {
+            case MAPPED:
+                return new MappedMovieStore();
+            case PACKED:
+                return new PackedMovieStore(false);
+            case OFF_HEAP:
+                return new PackedMovieStore(true);
+            default:
+                return new HeapMovieStore();
+        }
+    }
+
+    /**
+     * Returns the number of movies in the store.
+     *
+     * @return the number of movies
+     */
+    int size();
+
+    /**
+     * Returns the movie with the specified id.
+     *
+     * @param id the id of the movie
+     * @return the movie
+     */
+    Movie get(int id);
+
+    /**
+     * Returns the title of the movie with the specified id.
+     *
+     * @param id the id of the movie
+     * @return the title of the movie
+     */
+    String getTitle(int id);
+
+    /**
+     * Adds a movie to the end of the store.
+     *
+     * @param movie the movie to add
+     */
+    void add(Movie movie);
+
+    /**
+     * Returns whether the store reads its movies from a memory-mapped movie file. Such a file
+     * cannot be replaced while it is mapped on every platform, see {@link MappedMovieStore#MAPPINGS_LOCK_FILES}.
+     *
+     * @return true if the store maps the movie file
+     */
+    default boolean mapsFile() {
+        return false;
+    }
+
+    /**
+     * Returns a store holding the movies currently in this store, which does not change
+     * when more movies are added to this store.
+     *
+     * @return a snapshot of the store
+     */
+    MovieStore snapshot();
+}
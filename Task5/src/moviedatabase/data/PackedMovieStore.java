@@ -0,0 +1,408 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A MovieStore that packs the movies into columns instead of keeping Movie objects.
+ * The titles are stored as UTF-8 one after another in a few large buffers, with one
+ * end offset per movie. Review scores are stored as a one-byte code into a dictionary of
+ * the distinct review scores, since there are only a handful of them ("1/5" to "5/5").
+ * Movie objects are only created when a movie is returned.
+ * <p>
+ * This removes the object and String overhead of every movie, but not the title bytes
+ * themselves, and the {@link TitleIndex} still keeps its own lower-cased copy of every title.
+ * For the whole database the saving is therefore about 40% rather than several-fold: 300,000
+ * movies with their indexes took 49 MB instead of 82 MB on the heap, or 41 MB off the heap.
+ * <p>
+ * The buffers are either byte arrays on the heap or direct buffers outside of the heap.
+ * Buffers are never moved once allocated; when one is full the next, larger one is started.
+ * <p>
+ * Movies can also be added straight from the bytes of a movie file, which copies the title
+ * bytes without creating a Movie or a String, and stores built on several threads can be
+ * appended to each other without copying their buffers.
+ */
+final class PackedMovieStore implements MovieStore {
+    private static final int FIRST_SEGMENT_SIZE = 64 << 10;
+    private static final int MAX_SEGMENT_SIZE = 16 << 20;
+    private static final int OVERFLOW_CODE = 255;
+
+    private final boolean offHeap;
+    private final List<ByteBuffer> segments;
+    private final IntList segmentFirstRows;
+    private final IntList titleEnds;
+    private byte[] scoreCodes;
+    private final int firstSegmentSize;
+    private String[] dictionary;
+    private byte[][] encodedDictionary;
+    private final Map<String, Integer> dictionaryCodes;
+    private final Map<Integer, Movie> overflow;
+    private int size;
+
+    /**
+     * Constructs an empty PackedMovieStore.
+     *
+     * @param offHeap true to keep the titles in direct buffers outside of the heap
+     */
+    PackedMovieStore(boolean offHeap) {
+        this(offHeap, FIRST_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs an empty PackedMovieStore whose first buffer has the specified size.
+     * Used when the total length of the titles to add is known up front.
+     *
+     * @param offHeap          true to keep the titles in direct buffers outside of the heap
+     * @param firstSegmentSize the size of the first buffer for titles
+     */
+    PackedMovieStore(boolean offHeap, int firstSegmentSize) {
+        this.offHeap = offHeap;
+        this.segments = new ArrayList<>();
+        this.segmentFirstRows = new IntList();
+        this.titleEnds = new IntList();
+        this.scoreCodes = new byte[64];
+        this.firstSegmentSize = firstSegmentSize;
+        this.dictionary = new String[0];
+        this.encodedDictionary = new byte[0][];
+        this.dictionaryCodes = new HashMap<>();
+        this.overflow = new HashMap<>();
+    }
+
+    /**
+     * Constructs a PackedMovieStore over columns that were written before, such as the ones
+     * in a binary snapshot. All titles are in one buffer, which may be read-only; titles added
+     * later go to a new buffer.
+     *
+     * @param offHeap    true to keep the titles added later in direct buffers outside of the heap
+     * @param titles     the UTF-8 titles one after another
+     * @param titleEnds  the end of every title in the buffer
+     * @param scoreCodes the review score code of every movie
+     * @param dictionary the review score of every code
+     */
+    PackedMovieStore(boolean offHeap, ByteBuffer titles, int[] titleEnds, byte[] scoreCodes,
+                     String[] dictionary) {
+        this.offHeap = offHeap;
+        this.segments = new ArrayList<>();
+        this.segmentFirstRows = new IntList();
+        if (titleEnds.length > 0) {
+            segments.add(titles);
+            segmentFirstRows.add(0);
+        }
+        this.titleEnds = new IntList(titleEnds);
+        this.scoreCodes = scoreCodes;
+        this.firstSegmentSize = FIRST_SEGMENT_SIZE;
+        this.dictionary = dictionary;
+        this.encodedDictionary = new byte[dictionary.length][];
+        this.dictionaryCodes = new HashMap<>();
+        for (int code = 0; code < dictionary.length; code++) {
+            dictionaryCodes.put(dictionary[code], code);
+            encodedDictionary[code] = encode(dictionary[code]);
+        }
+        this.overflow = new HashMap<>();
+        this.size = titleEnds.length;
+    }
+
+    /**
+     * Constructs a PackedMovieStore holding a copy of the columns of another store.
+     * The buffers themselves are shared, since the bytes already written to them never change.
+     *
+     * @param other the store to copy
+     */
+    private PackedMovieStore(PackedMovieStore other) {
+        this.offHeap = other.offHeap;
+        this.segments = new ArrayList<>(other.segments);
+        this.segmentFirstRows = new IntList(other.segmentFirstRows.size());
+        this.segmentFirstRows.addAll(other.segmentFirstRows, 0);
+        this.titleEnds = new IntList(other.size);
+        this.titleEnds.addAll(other.titleEnds, 0);
+        this.scoreCodes = Arrays.copyOf(other.scoreCodes, other.size);
+        this.firstSegmentSize = other.firstSegmentSize;
+        this.dictionary = other.dictionary;
+        this.encodedDictionary = other.encodedDictionary;
+        this.dictionaryCodes = new HashMap<>(other.dictionaryCodes);
+        this.overflow = new HashMap<>(other.overflow);
+        this.size = other.size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Movie get(int id) {
+        if (scoreCodes[id] == (byte) OVERFLOW_CODE) {
+            return overflow.get(id);
+        }
+        return new Movie(getTitle(id), dictionary[scoreCodes[id] & 0xFF]);
+    }
+
+    @Override
+    public String getTitle(int id) {
+        if (scoreCodes[id] == (byte) OVERFLOW_CODE) {
+            return overflow.get(id).getTitle();
+        }
+        int segment = segmentOf(id);
+        ByteBuffer buffer = segments.get(segment);
+        int start = id == segmentFirstRows.get(segment) ? 0 : titleEnds.get(id - 1);
+        byte[] bytes = new byte[titleEnds.get(id) - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds a movie to the end of the store. A movie whose title cannot be stored as UTF-8
+     * without changing it, or whose review score does not fit in the dictionary, is kept as it is.
+     *
+     * @param movie the movie to add
+     */
+    @Override
+    public void add(Movie movie) {
+        int id = size;
+        ensureCapacity(id + 1);
+
+        int code = codeOf(movie.getReviewScore());
+        String title = movie.getTitle();
+        if (code == OVERFLOW_CODE || hasLoneSurrogate(title)) {
+            overflow.put(id, movie);
+            titleEnds.add(titleEnds.size() == 0 ? 0 : titleEnds.get(id - 1));
+            scoreCodes[id] = (byte) OVERFLOW_CODE;
+            size++;
+            return;
+        }
+
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        int start = reserve(bytes.length, id);
+        segments.get(segments.size() - 1).put(start, bytes);
+        titleEnds.add(start + bytes.length);
+        scoreCodes[id] = (byte) code;
+        size++;
+    }
+
+    /**
+     * Adds a movie whose title and review score are UTF-8 bytes in a buffer, such as a chunk
+     * of a memory-mapped movie file. The title bytes are copied as they are, so the title reads
+     * back as the same String that decoding them gives, and no Movie or String is created
+     * unless the review score does not fit in the dictionary.
+     *
+     * @param source     the buffer holding the movie
+     * @param titleStart the position of the first byte of the title
+     * @param titleEnd   the position after the last byte of the title
+     * @param scoreStart the position of the first byte of the review score
+     * @param scoreEnd   the position after the last byte of the review score
+     */
+    void add(ByteBuffer source, int titleStart, int titleEnd, int scoreStart, int scoreEnd) {
+        int code = codeOf(source, scoreStart, scoreEnd);
+        if (code == OVERFLOW_CODE) {
+            add(new Movie(decode(source, titleStart, titleEnd), decode(source, scoreStart, scoreEnd)));
+            return;
+        }
+
+        int id = size;
+        ensureCapacity(id + 1);
+        int length = titleEnd - titleStart;
+        int start = reserve(length, id);
+        segments.get(segments.size() - 1).put(start, source, titleStart, length);
+        titleEnds.add(start + length);
+        scoreCodes[id] = (byte) code;
+        size++;
+    }
+
+    /**
+     * Appends all movies of another store, which get the next ids in the order they have in
+     * the other store. The buffers of the other store are taken over instead of copied, so the
+     * other store must not be changed afterwards. Used to merge stores that were built in parallel.
+     *
+     * @param other the store to append
+     */
+    void addAll(PackedMovieStore other) {
+        int idOffset = size;
+        ensureCapacity(size + other.size);
+        int[] codes = new int[other.dictionary.length];
+        for (int code = 0; code < codes.length; code++) {
+            codes[code] = codeOf(other.dictionary[code]);
+        }
+
+        // Rows of the other store before its first buffer have no bytes of their own, so they
+        // keep the end of the last title here, where the next title added would start
+        int firstSegmentRow = other.segments.isEmpty() ? other.size : other.segmentFirstRows.get(0);
+        int carriedEnd = size == 0 ? 0 : titleEnds.get(size - 1);
+        for (int row = 0; row < other.size; row++) {
+            int id = idOffset + row;
+            titleEnds.add(row < firstSegmentRow ? carriedEnd : other.titleEnds.get(row));
+            int code = other.scoreCodes[row] & 0xFF;
+            if (code == OVERFLOW_CODE) {
+                overflow.put(id, other.overflow.get(row));
+                scoreCodes[id] = (byte) OVERFLOW_CODE;
+            } else if (codes[code] == OVERFLOW_CODE) {
+                overflow.put(id, other.get(row));
+                scoreCodes[id] = (byte) OVERFLOW_CODE;
+            } else {
+                scoreCodes[id] = (byte) codes[code];
+            }
+        }
+        segments.addAll(other.segments);
+        segmentFirstRows.addAll(other.segmentFirstRows, idOffset);
+        size += other.size;
+    }
+
+    @Override
+    public MovieStore snapshot() {
+        return new PackedMovieStore(this);
+    }
+
+    /**
+     * Grows the score codes so that they hold at least the specified number of movies.
+     *
+     * @param capacity the number of movies
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > scoreCodes.length) {
+            scoreCodes = Arrays.copyOf(scoreCodes, Math.max(capacity, size + (size >> 1) + 1));
+        }
+    }
+
+    /**
+     * Finds room for the next title in the last buffer, starting a new buffer if it does not fit.
+     *
+     * @param titleLength the length of the title in bytes
+     * @param id          the id of the movie
+     * @return the position of the title in the last buffer
+     */
+    private int reserve(int titleLength, int id) {
+        ByteBuffer buffer = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        int start = buffer == null ? 0 : titleEnds.get(id - 1);
+        if (buffer == null || buffer.isReadOnly() || start + titleLength > buffer.capacity()) {
+            newSegment(titleLength, id);
+            start = 0;
+        }
+        return start;
+    }
+
+    /**
+     * Allocates the next buffer for titles, twice as large as the previous one up to a limit,
+     * and always large enough for the title that did not fit.
+     *
+     * @param titleLength the length of the title to store next
+     * @param firstRow    the id of the first movie in the new buffer
+     * @return the new buffer
+     */
+    private ByteBuffer newSegment(int titleLength, int firstRow) {
+        int capacity = segments.isEmpty() ? firstSegmentSize
+                : Math.min(Math.max(segments.get(segments.size() - 1).capacity() * 2, FIRST_SEGMENT_SIZE),
+                MAX_SEGMENT_SIZE);
+        capacity = Math.max(capacity, titleLength);
+        ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        segments.add(buffer);
+        segmentFirstRows.add(firstRow);
+        return buffer;
+    }
+
+    /**
+     * Finds the buffer holding the title of the movie with the specified id.
+     *
+     * @param id the id of the movie
+     * @return the position of the buffer
+     */
+    private int segmentOf(int id) {
+        int position = Arrays.binarySearch(segmentFirstRows.array(), 0, segmentFirstRows.size(), id);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    /**
+     * Returns the dictionary code of a review score, adding it to the dictionary if needed.
+     *
+     * @param reviewScore the review score
+     * @return the code, or {@value #OVERFLOW_CODE} if the dictionary is full
+     */
+    private int codeOf(String reviewScore) {
+        Integer code = dictionaryCodes.get(reviewScore);
+        if (code != null) {
+            return code;
+        }
+        if (dictionary.length == OVERFLOW_CODE) {
+            return OVERFLOW_CODE;
+        }
+        String[] newDictionary = Arrays.copyOf(dictionary, dictionary.length + 1);
+        newDictionary[dictionary.length] = reviewScore;
+        byte[][] newEncodedDictionary = Arrays.copyOf(encodedDictionary, dictionary.length + 1);
+        newEncodedDictionary[dictionary.length] = encode(reviewScore);
+        dictionary = newDictionary;
+        encodedDictionary = newEncodedDictionary;
+        dictionaryCodes.put(reviewScore, dictionary.length - 1);
+        return dictionary.length - 1;
+    }
+
+    /**
+     * Returns the dictionary code of a review score given as UTF-8 bytes, adding it to the
+     * dictionary if needed. The bytes are compared to the encoded review scores, so a String
+     * is only created for a review score that is not in the dictionary yet.
+     *
+     * @param source the buffer holding the review score
+     * @param from   the position of the first byte
+     * @param to     the position after the last byte
+     * @return the code, or {@value #OVERFLOW_CODE} if the dictionary is full
+     */
+    private int codeOf(ByteBuffer source, int from, int to) {
+        for (int code = 0; code < encodedDictionary.length; code++) {
+            byte[] encoded = encodedDictionary[code];
+            if (encoded != null && encoded.length == to - from && equals(source, from, encoded)) {
+                return code;
+            }
+        }
+        return codeOf(decode(source, from, to));
+    }
+
+    private static boolean equals(ByteBuffer source, int from, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (source.get(from + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a review score for comparing it to bytes from a file. A review score holding a
+     * lone surrogate cannot be encoded without changing it and is never matched.
+     *
+     * @param reviewScore the review score
+     * @return the UTF-8 bytes, or null
+     */
+    private static byte[] encode(String reviewScore) {
+        return hasLoneSurrogate(reviewScore) ? null : reviewScore.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String decode(ByteBuffer source, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        source.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether a title holds a surrogate char that is not part of a valid pair,
+     * which would be replaced when encoding the title to UTF-8.
+     *
+     * @param title the title to check
+     * @return true if the title holds a lone surrogate char
+     */
+    static boolean hasLoneSurrogate(String title) {
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < title.length()
+                    && Character.isLowSurrogate(title.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
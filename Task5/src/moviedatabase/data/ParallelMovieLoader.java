@@ -0,0 +1,171 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+/**
+ * Loads a large movie file on several threads.
+ * The file is mapped in chunks that end at a line break. Every chunk is parsed and gets its
+ * own title and score index on the common ForkJoinPool, and the chunks are then merged in
+ * file order, so the ids are the same as when the file is read line by line.
+ * <p>
+ * Only {@link StorageMode#HEAP} creates a Movie per row. For {@link StorageMode#PACKED} and
+ * {@link StorageMode#OFF_HEAP} every chunk copies its bytes straight into a packed store of
+ * its own, and the merge takes over the buffers of those stores, so the peak heap use stays
+ * close to that of the packed encoding. The title index, the score index and the store are
+ * merged at the same time, each on its own thread.
+ */
+final class ParallelMovieLoader {
+    /**
+     * The file size from which loading in parallel pays off.
+     */
+    static final long MIN_PARALLEL_SIZE = 8L << 20;
+
+    private static final long CHUNK_SIZE = 16L << 20;
+
+    private final StorageMode storageMode;
+    private MovieStore store;
+    private TitleIndex titleIndex;
+    private ScoreIndex scoreIndex;
+
+    /**
+     * Constructs a ParallelMovieLoader.
+     *
+     * @param storageMode how the loaded movies are kept in memory
+     */
+    ParallelMovieLoader(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    /**
+     * Loads a movie file.
+     *
+     * @param path  the path of the movie file
+     * @param limit the number of bytes of the file to load
+     * @throws IOException if the file cannot be mapped
+     */
+    void load(Path path, long limit) throws IOException {
+        List<MappedMovieStore.Chunk> chunks = MappedMovieStore.map(path, CHUNK_SIZE, limit);
+        List<LoadedChunk> loaded = chunks.parallelStream()
+                .map(this::loadChunk)
+                .collect(Collectors.toList());
+
+        long titles = 0;
+        long arenaSize = 0;
+        for (LoadedChunk chunk : loaded) {
+            titles += chunk.titleIndex.size();
+            arenaSize += chunk.titleIndex.arenaSize();
+        }
+        if (arenaSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("The titles are too large to be indexed");
+        }
+        titleIndex = new TitleIndex((int) titles, (int) arenaSize);
+        scoreIndex = new ScoreIndex();
+        store = storageMode == StorageMode.MAPPED ? new MappedMovieStore(chunks) : MovieStore.create(storageMode);
+        // Every merge drops its part of a chunk once it is appended, so the chunks are freed as they go
+        ForkJoinTask.invokeAll(
+                ForkJoinTask.adapt(() -> loaded.forEach(this::addToTitleIndex)),
+                ForkJoinTask.adapt(() -> loaded.forEach(this::addToScoreIndex)),
+                ForkJoinTask.adapt(() -> loaded.forEach(this::addToStore)));
+    }
+
+    private void addToTitleIndex(LoadedChunk chunk) {
+        titleIndex.addAll(chunk.titleIndex);
+        chunk.titleIndex = null;
+    }
+
+    private void addToScoreIndex(LoadedChunk chunk) {
+        scoreIndex.addAll(chunk.scoreIndex);
+        chunk.scoreIndex = null;
+    }
+
+    /**
+     * Appends the movies of a chunk to the store, unless the store maps the file itself.
+     *
+     * @param chunk the loaded chunk
+     */
+    private void addToStore(LoadedChunk chunk) {
+        if (chunk.packed != null) {
+            ((PackedMovieStore) store).addAll(chunk.packed);
+        } else if (chunk.movies != null) {
+            for (Movie movie : chunk.movies) {
+                store.add(movie);
+            }
+        }
+        chunk.packed = null;
+        chunk.movies = null;
+    }
+
+    /**
+     * Returns the store holding the loaded movies.
+     *
+     * @return the movie store
+     */
+    MovieStore store() {
+        return store;
+    }
+
+    /**
+     * Returns the title index of the loaded movies.
+     *
+     * @return the title index
+     */
+    TitleIndex titleIndex() {
+        return titleIndex;
+    }
+
+    /**
+     * Returns the score index of the loaded movies.
+     *
+     * @return the score index
+     */
+    ScoreIndex scoreIndex() {
+        return scoreIndex;
+    }
+
+    /**
+     * Parses a chunk and indexes the movies in it. Runs on a ForkJoinPool thread.
+     *
+     * @param chunk the chunk to load
+     * @return the parsed chunk with its indexes
+     */
+    private LoadedChunk loadChunk(MappedMovieStore.Chunk chunk) {
+        chunk.parse();
+        LoadedChunk loaded = new LoadedChunk();
+        if (storageMode == StorageMode.HEAP) {
+            loaded.movies = new ArrayList<>(chunk.rows());
+        } else if (storageMode != StorageMode.MAPPED) {
+            loaded.packed = new PackedMovieStore(storageMode == StorageMode.OFF_HEAP, chunk.titleBytes());
+        }
+        for (int row = 0; row < chunk.rows(); row++) {
+            String title = chunk.title(row);
+            loaded.titleIndex.add(title);
+            loaded.scoreIndex.add(chunk.score(row));
+            if (loaded.movies != null) {
+                loaded.movies.add(new Movie(title, chunk.reviewScore(row)));
+            } else if (loaded.packed != null) {
+                chunk.addTo(row, loaded.packed);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * The movies of one chunk and their indexes, with ids counted from the start of the chunk.
+     * The movies are kept as Movie objects for {@link StorageMode#HEAP}, in a packed store for
+     * {@link StorageMode#PACKED} and {@link StorageMode#OFF_HEAP}, and not at all for
+     * {@link StorageMode#MAPPED}.
+     */
+    private static final class LoadedChunk {
+        private TitleIndex titleIndex = new TitleIndex();
+        private ScoreIndex scoreIndex = new ScoreIndex();
+        private List<Movie> movies;
+        private PackedMovieStore packed;
+    }
+}
@@ -0,0 +1,221 @@
+package moviedatabase.data;
+
+import java.util.Arrays;
+
+/**
+ * A radix trie over the lower-cased titles of a {@link TitleIndex}, used to find titles that start
+ * with a prefix. Every node keeps the ids of the {@value #TOP_COUNT} best scored titles below it,
+ * so a lookup only walks down the prefix and reads one list, no matter how many titles match.
+ * <p>
+ * The trie works on the encoded bytes in the arena of the title index. Since the encoding of
+ * every char is a prefix of no other, a byte prefix is exactly a char prefix. The label of every
+ * edge is a range of the arena, so the trie holds no text of its own, and the nodes are kept
+ * in parallel int arrays instead of node objects.
+ * <p>
+ * Nodes are never removed, child and sibling links only ever point to nodes created earlier
+ * or to a node split off the same node, and a node of index 0 (the root) is never a child,
+ * so a lookup that races with an add always ends, even though it may see a mix of old and new state.
+ */
+final class PrefixIndex {
+    /**
+     * The number of best scored titles kept at every node.
+     */
+    static final int TOP_COUNT = 10;
+
+    private static final int NONE = 0;
+    private static final int ROOT = 0;
+
+    private final TitleIndex titles;
+    private final ScoreIndex scores;
+    private int[] labelStarts;
+    private int[] labelLengths;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] topIds;
+    private byte[] topSizes;
+    private int nodeCount;
+
+    /**
+     * Constructs a PrefixIndex holding all titles of a title index.
+     *
+     * @param titles the title index whose titles are added
+     * @param scores the score index used to rank the titles, with the same ids
+     */
+    PrefixIndex(TitleIndex titles, ScoreIndex scores) {
+        this.titles = titles;
+        this.scores = scores;
+        int capacity = titles.size() + (titles.size() >> 1) + 16;
+        this.labelStarts = new int[capacity];
+        this.labelLengths = new int[capacity];
+        this.firstChildren = new int[capacity];
+        this.nextSiblings = new int[capacity];
+        this.topIds = new int[capacity * TOP_COUNT];
+        this.topSizes = new byte[capacity];
+        this.nodeCount = 1;
+        for (int id = 0; id < titles.size(); id++) {
+            add(id);
+        }
+    }
+
+    /**
+     * Adds a title that was added to the title index and the score index.
+     *
+     * @param id the id of the title
+     */
+    void add(int id) {
+        byte[] arena = titles.arena();
+        int position = titles.start(id);
+        int end = titles.end(id);
+        int score = scores.score(id);
+
+        int node = ROOT;
+        offer(node, id, score);
+        while (position < end) {
+            int child = findChild(arena, node, arena[position]);
+            if (child == NONE) {
+                child = newNode(position, end - position, NONE);
+                nextSiblings[child] = firstChildren[node];
+                firstChildren[node] = child;
+                offer(child, id, score);
+                return;
+            }
+
+            int labelStart = labelStarts[child];
+            int labelLength = labelLengths[child];
+            int matched = 1;
+            while (matched < labelLength && position + matched < end
+                    && arena[labelStart + matched] == arena[position + matched]) {
+                matched++;
+            }
+            if (matched < labelLength) {
+                split(child, matched);
+            }
+            offer(child, id, score);
+            position += matched;
+            node = child;
+        }
+    }
+
+    /**
+     * Returns the best scored titles starting with the prefix, ignoring case.
+     * Titles with the same score come in the order they were added.
+     *
+     * @param prefix the prefix to search for
+     * @param limit  the maximum number of ids to return, at most {@value #TOP_COUNT} are returned
+     * @return the ids of the titles, best first
+     */
+    int[] top(String prefix, int limit) {
+        byte[] pattern = TitleIndex.encodeKeyword(prefix);
+        byte[] arena = titles.arena();
+
+        int node = ROOT;
+        int position = 0;
+        while (position < pattern.length) {
+            int child = findChild(arena, node, pattern[position]);
+            if (child == NONE) {
+                return new int[0];
+            }
+            int labelStart = labelStarts[child];
+            int labelLength = labelLengths[child];
+            if (labelLength == 0) {
+                // Only possible when racing with an add, the lookup is then repeated
+                throw new IllegalStateException("Empty edge label");
+            }
+            for (int i = 1; i < labelLength && position + i < pattern.length; i++) {
+                if (arena[labelStart + i] != pattern[position + i]) {
+                    return new int[0];
+                }
+            }
+            position += labelLength;
+            node = child;
+        }
+        int size = Math.min(Math.max(limit, 0), topSizes[node]);
+        return Arrays.copyOfRange(topIds, node * TOP_COUNT, node * TOP_COUNT + size);
+    }
+
+    /**
+     * Finds the child of a node whose label starts with the specified byte.
+     *
+     * @param arena the encoded titles
+     * @param node  the parent node
+     * @param first the first byte of the label
+     * @return the child, or {@link #NONE} if there is none
+     */
+    private int findChild(byte[] arena, int node, byte first) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            if (arena[labelStarts[child]] == first) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Splits the label of a node, so that the node keeps the first part and a new child below
+     * it takes the rest together with the children. The child starts with the same best titles,
+     * since exactly the same titles are below it.
+     *
+     * @param node   the node to split
+     * @param length the length of the part the node keeps
+     */
+    private void split(int node, int length) {
+        int rest = newNode(labelStarts[node] + length, labelLengths[node] - length, firstChildren[node]);
+        System.arraycopy(topIds, node * TOP_COUNT, topIds, rest * TOP_COUNT, topSizes[node]);
+        topSizes[rest] = topSizes[node];
+        firstChildren[node] = rest;
+        labelLengths[node] = length;
+    }
+
+    /**
+     * Creates a node without a sibling and without best titles.
+     *
+     * @param labelStart  the position of the label in the arena
+     * @param labelLength the length of the label
+     * @param firstChild  the first child of the node, or {@link #NONE}
+     * @return the new node
+     */
+    private int newNode(int labelStart, int labelLength, int firstChild) {
+        if (nodeCount == labelStarts.length) {
+            int capacity = nodeCount + (nodeCount >> 1) + 16;
+            labelStarts = Arrays.copyOf(labelStarts, capacity);
+            labelLengths = Arrays.copyOf(labelLengths, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            topIds = Arrays.copyOf(topIds, capacity * TOP_COUNT);
+            topSizes = Arrays.copyOf(topSizes, capacity);
+        }
+        int node = nodeCount;
+        labelStarts[node] = labelStart;
+        labelLengths[node] = labelLength;
+        firstChildren[node] = firstChild;
+        nodeCount++;
+        return node;
+    }
+
+    /**
+     * Puts a title into the best titles of a node if there is room or if it is better than
+     * the worst of them. A higher score is better, and titles added earlier win ties,
+     * so a new title never displaces one with the same score.
+     *
+     * @param node  the node
+     * @param id    the id of the title
+     * @param score the score of the title
+     */
+    private void offer(int node, int id, int score) {
+        int base = node * TOP_COUNT;
+        int size = topSizes[node];
+        int position = size;
+        while (position > 0 && scores.score(topIds[base + position - 1]) < score) {
+            position--;
+        }
+        if (position == TOP_COUNT) {
+            return;
+        }
+        int moved = Math.min(size, TOP_COUNT - 1) - position;
+        System.arraycopy(topIds, base + position, topIds, base + position + 1, moved);
+        topIds[base + position] = id;
+        if (size < TOP_COUNT) {
+            topSizes[node] = (byte) (size + 1);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package moviedatabase.data;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of search results, kept as the ids of the matching movies.
+ * Title searches are cached by their lower case keyword and review score searches by their
+ * minimum score. Results are evicted once either the number of results or the total number
+ * of cached ids exceeds its limit.
+ * <p>
+ * The results are kept in a ConcurrentHashMap, so a lookup takes no lock and changes nothing
+ * shared but a flag on the result, and concurrent searches do not wait for each other.
+ * Eviction follows the clock algorithm: a hand goes round the results, and a result that was
+ * used since the hand last passed it gets a second chance, while any other result is evicted.
+ * Only storing a result, which follows a search that missed the cache, takes the lock of the hand.
+ * <p>
+ * Movies are never removed or changed, so a cached result only goes stale when a movie is added
+ * that it would match. {@link #invalidate(String, int)} drops exactly those results.
+ * Every invalidation also moves the cache to a new generation, and a result is only kept if
+ * no movie was added since the search that produced it started, so a search that raced
+ * with an add never leaves a result that misses the new movie.
+ */
+final class QueryCache {
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private Iterator<Map.Entry<Key, Entry>> hand;
+
+    /**
+     * Constructs an empty QueryCache.
+     *
+     * @param maxEntries the maximum number of cached results
+     * @param maxWeight  the maximum total number of ids in the cached results
+     */
+    QueryCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the current generation, which has to be passed back when storing a result.
+     * Must be read before the search whose result is stored.
+     *
+     * @return the current generation
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the largest number of ids a result can have and still be stored.
+     *
+     * @return the maximum length of a stored result
+     */
+    int maxResultLength() {
+        return (int) Math.min(maxWeight / 8, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the cached result of a title search.
+     *
+     * @param keyword the lower case keyword
+     * @return the ids of the matching movies, or null if the result is not cached
+     */
+    int[] getTitleIds(String keyword) {
+        return get(new Key(keyword, 0));
+    }
+
+    /**
+     * Stores the result of a title search.
+     *
+     * @param keyword    the lower case keyword
+     * @param ids        the ids of the matching movies
+     * @param generation the generation read before the search started
+     */
+    void putTitleIds(String keyword, int[] ids, long generation) {
+        put(new Key(keyword, 0), ids, generation);
+    }
+
+    /**
+     * Returns the cached result of a review score search.
+     *
+     * @param minScore the minimum score of the search
+     * @return the ids of the matching movies, or null if the result is not cached
+     */
+    int[] getScoreIds(int minScore) {
+        return get(new Key(null, minScore));
+    }
+
+    /**
+     * Stores the result of a review score search.
+     *
+     * @param minScore   the minimum score of the search
+     * @param ids        the ids of the matching movies
+     * @param generation the generation read before the search started
+     */
+    void putScoreIds(int minScore, int[] ids, long generation) {
+        put(new Key(null, minScore), ids, generation);
+    }
+
+    /**
+     * Drops the results that an added movie changes: the title searches whose keyword is part
+     * of the title, and the review score searches with a minimum at or below its score.
+     * Takes no lock, so searches go on while the results are checked.
+     *
+     * @param title the title of the added movie
+     * @param score the parsed score of the added movie, or {@link ScoreIndex#UNSCORED}
+     */
+    void invalidate(String title, int score) {
+        generation.incrementAndGet();
+        if (entries.isEmpty()) {
+            return;
+        }
+        String folded = title.toLowerCase();
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            Key key = entry.getKey();
+            boolean stale = key.keyword != null
+                    ? folded.contains(key.keyword)
+                    : score != ScoreIndex.UNSCORED && key.minScore <= score;
+            if (stale && remove(key, entry.getValue())) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops all results. Used instead of {@link #invalidate(String, int)} for large batches of
+     * added movies, where checking every result against every movie would cost more than
+     * searching again.
+     */
+    void clear() {
+        generation.incrementAndGet();
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (remove(entry.getKey(), entry.getValue())) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return the number of cached results
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the current counters of the cache.
+     *
+     * @return the counters
+     */
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+
+    private int[] get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        // Only written when it changes, so that hits on a popular result do not fight over its cache line
+        if (!entry.used) {
+            entry.used = true;
+        }
+        hits.increment();
+        return entry.ids;
+    }
+
+    /**
+     * Stores a result unless a movie was added since the search started, or the result alone
+     * would take more than an eighth of the cache, and evicts results until the cache is within
+     * its limits again.
+     */
+    private void put(Key key, int[] ids, long searchGeneration) {
+        if (searchGeneration != generation.get() || ids.length > maxResultLength()) {
+            return;
+        }
+        Entry entry = new Entry(ids);
+        Entry previous = entries.put(key, entry);
+        weight.addAndGet(ids.length - (previous != null ? previous.ids.length : 0));
+        // An invalidation that started after the check above may have missed the new result,
+        // but it moved the generation first, so the result is taken out again here
+        if (searchGeneration != generation.get()) {
+            remove(key, entry);
+            return;
+        }
+        if (entries.size() > maxEntries || weight.get() > maxWeight) {
+            evict();
+        }
+    }
+
+    /**
+     * Moves the clock hand over the results and evicts those that were not used since it last
+     * passed them, until the cache is within its limits again.
+     */
+    private synchronized void evict() {
+        while (entries.size() > maxEntries || weight.get() > maxWeight) {
+            if (hand == null || !hand.hasNext()) {
+                hand = entries.entrySet().iterator();
+                if (!hand.hasNext()) {
+                    return;
+                }
+            }
+            Map.Entry<Key, Entry> next = hand.next();
+            Entry entry = next.getValue();
+            if (entry.used) {
+                entry.used = false;
+            } else if (remove(next.getKey(), entry)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes a result if it is still the one stored under its key.
+     *
+     * @return true if the result was removed
+     */
+    private boolean remove(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            weight.addAndGet(-entry.ids.length);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A cached result, with the flag that gives it a second chance when the clock hand passes.
+     */
+    private static final class Entry {
+        private final int[] ids;
+        private volatile boolean used;
+
+        Entry(int[] ids) {
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * The key of a cached result: a lower case keyword for a title search,
+     * or a minimum score for a review score search when the keyword is null.
+     */
+    private static final class Key {
+        private final String keyword;
+        private final int minScore;
+
+        Key(String keyword, int minScore) {
+            this.keyword = keyword;
+            this.minScore = minScore;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return minScore == key.minScore
+                    && (keyword == null ? key.keyword == null : keyword.equals(key.keyword));
+        }
+
+        @Override
+        public int hashCode() {
+            return keyword == null ? minScore : keyword.hashCode() * 31 + minScore;
+        }
+    }
+}
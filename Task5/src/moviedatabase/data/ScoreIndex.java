@@ -0,0 +1,306 @@
+package moviedatabase.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * An index over the review scores of the movies.
+ * Every review score of the form "X/Y" is parsed once into an int column, and the id
+ * of every movie is put into a bucket for its score. The buckets are kept sorted by score,
+ * so range and top-K queries only walk the buckets they need.
+ * <p>
+ * The iterators returned by the queries hold on to the bucket arrays and sizes they started with,
+ * so they keep working without a lock while more movies are added.
+ */
+final class ScoreIndex {
+    /**
+     * The score stored for review scores that cannot be parsed. Such movies are never
+     * part of a query result.
+     */
+    static final int UNSCORED = Integer.MIN_VALUE;
+
+    private final IntList scores;
+    private int[] bucketScores;
+    private IntList[] buckets;
+
+    /**
+     * Constructs an empty ScoreIndex.
+     */
+    ScoreIndex() {
+        this.scores = new IntList();
+        this.bucketScores = new int[0];
+        this.buckets = new IntList[0];
+    }
+
+    /**
+     * Constructs a ScoreIndex from the columns of an index that was written before.
+     *
+     * @param scores       the score of every movie
+     * @param bucketScores the score of every bucket, in ascending order
+     * @param buckets      the ids of every bucket
+     */
+    private ScoreIndex(IntList scores, int[] bucketScores, IntList[] buckets) {
+        this.scores = scores;
+        this.bucketScores = bucketScores;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Writes the scores and the buckets to a binary snapshot.
+     *
+     * @param out the snapshot to write to
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(BinarySnapshot.Output out) throws IOException {
+        out.writeInts(scores.array(), scores.size());
+        out.writeInts(bucketScores, bucketScores.length);
+        for (IntList bucket : buckets) {
+            out.writeInts(bucket.array(), bucket.size());
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo} from a binary snapshot.
+     *
+     * @param in the snapshot to read from
+     * @return the index
+     * @throws IOException if the snapshot cannot be read
+     */
+    static ScoreIndex readFrom(BinarySnapshot.Input in) throws IOException {
+        IntList scores = new IntList(in.readInts());
+        int[] bucketScores = in.readInts();
+        IntList[] buckets = new IntList[bucketScores.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new IntList(in.readInts());
+        }
+        return new ScoreIndex(scores, bucketScores, buckets);
+    }
+
+    /**
+     * Parses a review score and adds it to the index. The movie gets the next id,
+     * which is the number of scores added before it.
+     *
+     * @param reviewScore the review score in the format "X/Y"
+     */
+    void add(String reviewScore) {
+        add(parseReviewScore(reviewScore));
+    }
+
+    /**
+     * Adds an already parsed score to the index. The movie gets the next id,
+     * which is the number of scores added before it.
+     *
+     * @param score the score, or {@link #UNSCORED}
+     */
+    void add(int score) {
+        int id = scores.size();
+        scores.add(score);
+        if (score != UNSCORED) {
+            bucketFor(score).add(id);
+        }
+    }
+
+    /**
+     * Appends all scores of another index, which get the next ids in the order they have
+     * in the other index. Used to merge indexes that were built in parallel.
+     *
+     * @param other the index to append
+     */
+    void addAll(ScoreIndex other) {
+        int idOffset = scores.size();
+        scores.addAll(other.scores, 0);
+        for (int i = 0; i < other.buckets.length; i++) {
+            bucketFor(other.bucketScores[i]).addAll(other.buckets[i], idOffset);
+        }
+    }
+
+    /**
+     * Returns the parsed score of the movie with the specified id.
+     *
+     * @param id the id of the movie
+     * @return the score, or {@link #UNSCORED} if the review score could not be parsed
+     */
+    int score(int id) {
+        return scores.get(id);
+    }
+
+    /**
+     * Counts the movies with a score in the specified range.
+     *
+     * @param minScore the lowest score to include
+     * @param maxScore the highest score to include
+     * @return the number of movies in the range
+     */
+    int count(int minScore, int maxScore) {
+        int count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if (bucketScores[i] >= minScore && bucketScores[i] <= maxScore) {
+                count += buckets[i].size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the ids of the movies with a score in the specified range, in the order
+     * the movies were added. The buckets in the range are merged lazily while iterating.
+     *
+     * @param minScore the lowest score to include
+     * @param maxScore the highest score to include
+     * @return an iterator over the matching ids
+     */
+    PrimitiveIterator.OfInt rangeIds(int minScore, int maxScore) {
+        int from = 0;
+        while (from < bucketScores.length && bucketScores[from] < minScore) {
+            from++;
+        }
+        int to = from;
+        while (to < bucketScores.length && bucketScores[to] <= maxScore) {
+            to++;
+        }
+        int[][] merged = new int[to - from][];
+        int[] sizes = new int[merged.length];
+        for (int i = 0; i < merged.length; i++) {
+            sizes[i] = buckets[from + i].size();
+            merged[i] = buckets[from + i].array();
+        }
+        return new MergingIterator(merged, sizes);
+    }
+
+    /**
+     * Returns the ids of all scored movies, highest score first.
+     * Movies with the same score come in the order they were added.
+     *
+     * @return an iterator over the ids, best first
+     */
+    PrimitiveIterator.OfInt topIds() {
+        int[][] ranked = new int[buckets.length][];
+        int[] sizes = new int[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            IntList bucket = buckets[buckets.length - 1 - i];
+            sizes[i] = bucket.size();
+            ranked[i] = bucket.array();
+        }
+        return new ConcatenatingIterator(ranked, sizes);
+    }
+
+    /**
+     * Returns the bucket for the specified score, creating it if needed.
+     *
+     * @param score the score of the bucket
+     * @return the bucket holding the ids with the score
+     */
+    private IntList bucketFor(int score) {
+        int position = Arrays.binarySearch(bucketScores, score);
+        if (position >= 0) {
+            return buckets[position];
+        }
+
+        // A new score is rare, so the bucket arrays are simply rebuilt
+        int insertAt = -position - 1;
+        int[] newScores = new int[bucketScores.length + 1];
+        IntList[] newBuckets = new IntList[buckets.length + 1];
+        System.arraycopy(bucketScores, 0, newScores, 0, insertAt);
+        System.arraycopy(buckets, 0, newBuckets, 0, insertAt);
+        newScores[insertAt] = score;
+        newBuckets[insertAt] = new IntList();
+        System.arraycopy(bucketScores, insertAt, newScores, insertAt + 1, bucketScores.length - insertAt);
+        System.arraycopy(buckets, insertAt, newBuckets, insertAt + 1, buckets.length - insertAt);
+        bucketScores = newScores;
+        buckets = newBuckets;
+        return newBuckets[insertAt];
+    }
+
+    /**
+     * Parses the score part of a review score in the format "X/Y".
+     *
+     * @param reviewScore the review score to parse
+     * @return the score X, or {@link #UNSCORED} if the review score is not in the expected format
+     */
+    static int parseReviewScore(String reviewScore) {
+        String[] reviewScores = reviewScore.split("/");
+        if (reviewScores.length != 2) {
+            return UNSCORED;
+        }
+        try {
+            return Integer.parseInt(reviewScores[0].trim());
+        } catch (NumberFormatException e) {
+            return UNSCORED;
+        }
+    }
+
+    /**
+     * Iterates over several buckets in ascending id order by always taking the
+     * smallest head. There are only a handful of distinct scores, so a linear pick is enough.
+     */
+    private static final class MergingIterator implements PrimitiveIterator.OfInt {
+        private final int[][] lists;
+        private final int[] sizes;
+        private final int[] positions;
+
+        MergingIterator(int[][] lists, int[] sizes) {
+            this.lists = lists;
+            this.sizes = sizes;
+            this.positions = new int[lists.length];
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (int i = 0; i < lists.length; i++) {
+                if (positions[i] < sizes[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int nextInt() {
+            int best = -1;
+            for (int i = 0; i < lists.length; i++) {
+                if (positions[i] < sizes[i]
+                        && (best < 0 || lists[i][positions[i]] < lists[best][positions[best]])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                throw new NoSuchElementException();
+            }
+            return lists[best][positions[best]++];
+        }
+    }
+
+    /**
+     * Iterates over several buckets one after another.
+     */
+    private static final class ConcatenatingIterator implements PrimitiveIterator.OfInt {
+        private final int[][] lists;
+        private final int[] sizes;
+        private int list;
+        private int position;
+
+        ConcatenatingIterator(int[][] lists, int[] sizes) {
+            this.lists = lists;
+            this.sizes = sizes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (list < lists.length && position >= sizes[list]) {
+                list++;
+                position = 0;
+            }
+            return list < lists.length;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return lists[list][position++];
+        }
+    }
+}
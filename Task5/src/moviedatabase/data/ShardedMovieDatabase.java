@@ -0,0 +1,351 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A movie database split into several shards, where every shard is a {@link MovieDatabase}
+ * with its own file, journal and indexes. A movie belongs to the shard picked by the hash of
+ * its title, so adds go to one shard only, and adds to different shards do not wait for each other.
+ * Searches run on all shards at once and their results are merged.
+ * <p>
+ * The shards of "Movies.txt" split into 4 shards are kept in "Movies.txt.shard-0-of-4" to
+ * "Movies.txt.shard-3-of-4". When they do not exist yet, they are created by splitting "Movies.txt",
+ * which is not changed afterwards. Since every shard file is a normal movie file, a shard can also
+ * be opened on its own, for example by a separate server process.
+ * <p>
+ * Results that are in the order the movies were added are merged shard by shard, so within
+ * a shard the movies keep their order. Results that are ranked by review score are merged by score.
+ */
+public class ShardedMovieDatabase implements AutoCloseable {
+    private final MovieDatabase[] shards;
+    private final ExecutorService searchers;
+
+    /**
+     * Constructs a ShardedMovieDatabase with the specified file path and number of shards,
+     * keeping the movies on the heap. The shards are loaded in parallel.
+     *
+     * @param fileName   the file path the shard files are named after
+     * @param shardCount the number of shards
+     */
+    public ShardedMovieDatabase(String fileName, int shardCount) {
+        this(fileName, shardCount, StorageMode.HEAP);
+    }
+
+    /**
+     * Constructs a ShardedMovieDatabase with the specified file path, number of shards and
+     * storage mode. The shards are loaded in parallel.
+     * In case of any errors while splitting the file into shards, an error message is printed to the console.
+     *
+     * @param fileName    the file path the shard files are named after
+     * @param shardCount  the number of shards
+     * @param storageMode how the movies of every shard are kept in memory
+     * @throws IllegalArgumentException if shardCount is less than 1
+     */
+    public ShardedMovieDatabase(String fileName, int shardCount, StorageMode storageMode) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Invalid number of shards: " + shardCount);
+        }
+        this.shards = new MovieDatabase[shardCount];
+        this.searchers = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "movie-shard-searcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Path[] shardPaths = new Path[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardPaths[shard] = Paths.get(fileName + ".shard-" + shard + "-of-" + shardCount);
+        }
+        try {
+            split(Paths.get(fileName), shardPaths);
+        } catch (IOException e) {
+            System.out.println("An error occurred while splitting the movies into shards: " + e.getMessage());
+        }
+
+        List<MovieDatabase> opened = scatter(shard -> new MovieDatabase(shardPaths[shard].toString(), storageMode));
+        opened.toArray(shards);
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard that holds movies with the specified title.
+     * The shard only depends on the title and the number of shards, so it stays the same across restarts.
+     *
+     * @param title the title of a movie
+     * @return the position of the shard
+     */
+    public int shardOf(String title) {
+        return shardOf(title, shards.length);
+    }
+
+    /**
+     * Returns the shard that holds movies with the specified title.
+     *
+     * @param title      the title of a movie
+     * @param shardCount the number of shards
+     * @return the position of the shard
+     */
+    private static int shardOf(String title, int shardCount) {
+        return Math.floorMod(title.hashCode(), shardCount);
+    }
+
+    /**
+     * Searches all shards by title, based on a given keyword, ignoring case.
+     *
+     * @param keyword the keyword to search for in movie titles
+     * @return a list of movies whose titles contain the keyword, shard by shard
+     */
+    public List<Movie> searchByTitle(String keyword) {
+        return concat(scatter(shard -> shards[shard].searchByTitle(keyword)));
+    }
+
+    /**
+     * Searches all shards by review score, based on a given minimum review score.
+     *
+     * @param minReviewScore the minimum review score to search for
+     * @return a list of movies with a review score greater than or equal to the minimum, shard by shard
+     */
+    public List<Movie> searchByReviewScore(int minReviewScore) {
+        return concat(scatter(shard -> shards[shard].searchByReviewScore(minReviewScore)));
+    }
+
+    /**
+     * Returns the movies whose titles start with the prefix, ignoring case, with the highest
+     * review scores first. Every shard returns its best movies, and the best of those are kept.
+     * Movies with the same score come shard by shard.
+     *
+     * @param prefix the start of the titles to find
+     * @param limit  the maximum number of movies to return, at most 10
+     * @return a list of at most limit movies whose titles start with the prefix
+     */
+    public List<Movie> autocomplete(String prefix, int limit) {
+        return best(scatter(shard -> shards[shard].autocomplete(prefix, limit)), limit);
+    }
+
+    /**
+     * Returns the movies with the highest review scores, best first.
+     * Every shard returns its best movies, and the best of those are kept.
+     * Movies with the same score come shard by shard.
+     *
+     * @param limit the maximum number of movies to return
+     * @return a list of at most limit movies
+     */
+    public List<Movie> topByReviewScore(int limit) {
+        return best(scatter(shard -> shards[shard].topByReviewScore(limit).collect(Collectors.toList())), limit);
+    }
+
+    /**
+     * Adds a new movie to the shard picked by its title.
+     *
+     * @param movie the movie to be added to the database
+     */
+    public void addMovie(Movie movie) {
+        shards[shardOf(movie.getTitle())].addMovie(movie);
+    }
+
+    /**
+     * Adds several new movies at once. The movies are grouped by shard, and every shard
+     * adds its group in parallel with the others, with a single flush of its journal.
+     *
+     * @param movies the movies to be added to the database
+     * @throws IllegalArgumentException if a movie is invalid, in which case the shards that
+     *                                  checked their group before it may have added it
+     */
+    public void addMovies(Collection<Movie> movies) {
+        List<List<Movie>> groups = new ArrayList<>(shards.length);
+        for (int shard = 0; shard < shards.length; shard++) {
+            groups.add(new ArrayList<>());
+        }
+        for (Movie movie : movies) {
+            groups.get(shardOf(movie.getTitle())).add(movie);
+        }
+        scatter(shard -> {
+            if (!groups.get(shard).isEmpty()) {
+                shards[shard].addMovies(groups.get(shard));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sets whether every added movie is synced to the storage device before the add returns.
+     *
+     * @param syncWrites true to sync every add
+     */
+    public void setSyncWrites(boolean syncWrites) {
+        for (MovieDatabase shard : shards) {
+            shard.setSyncWrites(syncWrites);
+        }
+    }
+
+    /**
+     * Folds the journals of all shards into their files, in parallel, and waits until it is done.
+     */
+    public void compact() {
+        scatter(shard -> {
+            shards[shard].compact();
+            return null;
+        });
+    }
+
+    /**
+     * Closes all shards and stops the search threads.
+     */
+    @Override
+    public void close() {
+        for (MovieDatabase shard : shards) {
+            if (shard != null) {
+                shard.close();
+            }
+        }
+        searchers.shutdown();
+    }
+
+    /**
+     * Runs a task for every shard, the first on the calling thread and the others on the search threads,
+     * and waits for all of them.
+     *
+     * @param task the task, given the position of the shard
+     * @param <T>  the type of the result
+     * @return the results in shard order
+     */
+    private <T> List<T> scatter(Function<Integer, T> task) {
+        List<Future<T>> futures = new ArrayList<>(shards.length - 1);
+        for (int shard = 1; shard < shards.length; shard++) {
+            int position = shard;
+            futures.add(searchers.submit(() -> task.apply(position)));
+        }
+
+        List<T> results = new ArrayList<>(shards.length);
+        results.add(task.apply(0));
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a shard", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Joins the results of all shards.
+     *
+     * @param results the results in shard order
+     * @return a list holding all results, shard by shard
+     */
+    private static List<Movie> concat(List<List<Movie>> results) {
+        int size = 0;
+        for (List<Movie> result : results) {
+            size += result.size();
+        }
+        List<Movie> merged = new ArrayList<>(size);
+        for (List<Movie> result : results) {
+            merged.addAll(result);
+        }
+        return merged;
+    }
+
+    /**
+     * Keeps the movies with the highest review scores from the best movies of every shard.
+     *
+     * @param results the best movies of every shard, best first
+     * @param limit   the maximum number of movies to keep
+     * @return a list of at most limit movies, best first
+     */
+    private static List<Movie> best(List<List<Movie>> results, int limit) {
+        // A stable sort keeps the order within a shard and puts earlier shards first on ties
+        return concat(results).stream()
+                .sorted(Comparator.comparingInt((Movie movie) -> ScoreIndex.parseReviewScore(movie.getReviewScore()))
+                        .reversed())
+                .limit(Math.max(limit, 0))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Splits a movie file into shard files, unless the shards already exist.
+     * The shards are only created if none of them has a journal yet, which means that nothing
+     * has been added to them, so shards left behind by a split that was interrupted are replaced.
+     * Every line goes to the shard of its title, and lines that are not movies are dropped.
+     *
+     * @param source     the movie file to split
+     * @param shardPaths the paths of the shard files
+     * @throws IOException if the file cannot be split
+     */
+    private static void split(Path source, Path[] shardPaths) throws IOException {
+        boolean complete = true;
+        for (Path shardPath : shardPaths) {
+            if (Files.exists(Paths.get(shardPath + ".journal"))) {
+                return;
+            }
+            complete &= Files.exists(shardPath);
+        }
+        if (complete || !Files.exists(source)) {
+            return;
+        }
+
+        Path[] tempPaths = new Path[shardPaths.length];
+        Writer[] writers = new Writer[shardPaths.length];
+        try (BufferedReader reader = new BufferedReader(new FileReader(source.toFile(), StandardCharsets.UTF_8))) {
+            for (int shard = 0; shard < shardPaths.length; shard++) {
+                tempPaths[shard] = Paths.get(shardPaths[shard] + ".tmp");
+                writers[shard] = new BufferedWriter(new FileWriter(tempPaths[shard].toFile(), StandardCharsets.UTF_8));
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length == 2) {
+                    Writer writer = writers[shardOf(parts[0].trim(), shardPaths.length)];
+                    writer.write(line);
+                    writer.write(System.lineSeparator());
+                }
+            }
+        } finally {
+            for (Writer writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+        for (int shard = 0; shard < shardPaths.length; shard++) {
+            Files.move(tempPaths[shard], shardPaths[shard], StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package moviedatabase.data;
+
+/**
+ * The ways a MovieDatabase can keep its movies in memory.
+ */
+public enum StorageMode {
+    /**
+     * Every movie is read into a Movie object on the heap.
+     */
+    HEAP,
+
+    /**
+     * The movie file is memory-mapped and parsed in place. Titles and review scores stay
+     * in the mapped file and are only turned into Strings when a movie is returned.
+     * Movies added after loading are kept on the heap. On Windows the mapped file is not
+     * compacted, since it cannot be replaced while it is mapped.
+     */
+    MAPPED,
+
+    /**
+     * Movies are packed into columns on the heap: UTF-8 titles one after another with an
+     * offset per movie, and a one-byte code per review score. Movie objects are only created
+     * when a movie is returned. The title index still holds a lower-cased copy of every title,
+     * so the database as a whole takes about 40% less heap than with {@link #HEAP}.
+     */
+    PACKED,
+
+    /**
+     * Like {@link #PACKED}, but the titles are kept in direct buffers outside of the heap.
+     */
+    OFF_HEAP
+}
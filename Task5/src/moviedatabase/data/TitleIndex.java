@@ -0,0 +1,640 @@
+package moviedatabase.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * An inverted trigram index over movie titles.
+ * Every title is lower-cased once when it is added, and each run of three characters
+ * in the lower-cased title is mapped to the ids of the titles that contain it.
+ * A substring query only has to check the titles listed under its rarest trigram.
+ * <p>
+ * The lower-cased titles are kept in one packed byte array, where every UTF-16 char
+ * is encoded on its own into one to three bytes, in the style of UTF-8.
+ * Since no char encoding is a prefix of another and lead bytes never look like
+ * continuation bytes, a byte substring match is exactly a char substring match,
+ * so matching gives the same result as {@code title.toLowerCase().contains(keyword.toLowerCase())}.
+ * <p>
+ * The postings are kept in an open-addressing table of primitive trigram keys. Nothing is
+ * ever removed and a grown table is only published once it is complete, so a lookup that
+ * races with an add always ends, even though it may see a mix of old and new state.
+ * <p>
+ * The iterators returned by {@link #matchIds(String)} hold on to the arrays and sizes they
+ * started with, so they keep working without a lock while more titles are added.
+ */
+final class TitleIndex {
+    /**
+     * A match somewhere inside a word of the title.
+     */
+    static final int SUBSTRING_MATCH = 1;
+    /**
+     * A match at the start of a word of the title.
+     */
+    static final int WORD_MATCH = 2;
+    /**
+     * A match at the start of the title.
+     */
+    static final int PREFIX_MATCH = 3;
+
+    private static final int GRAM_LENGTH = 3;
+
+    private byte[] arena;
+    private int arenaSize;
+    private final IntList ends;
+    private long[] gramKeys;
+    private IntList[] gramIds;
+    private int gramCount;
+
+    /**
+     * Constructs an empty TitleIndex.
+     */
+    TitleIndex() {
+        this(4, 1024);
+    }
+
+    /**
+     * Constructs an empty TitleIndex with room for the specified number of titles and bytes,
+     * so that merging indexes of a known size does not copy the titles again while growing.
+     *
+     * @param titles        the number of titles to make room for
+     * @param arenaCapacity the number of encoded bytes to make room for
+     */
+    TitleIndex(int titles, int arenaCapacity) {
+        this.arena = new byte[arenaCapacity];
+        this.ends = new IntList(titles);
+        this.gramKeys = new long[64];
+        this.gramIds = new IntList[64];
+    }
+
+    /**
+     * Constructs a TitleIndex from the columns of an index that was written before.
+     *
+     * @param arena     the encoded lower-cased titles
+     * @param ends      the end of every title in the arena
+     * @param gramKeys  the trigram keys of the postings table
+     * @param gramIds   the ids in the postings table, null for an empty slot
+     * @param gramCount the number of trigrams in the table
+     */
+    private TitleIndex(byte[] arena, IntList ends, long[] gramKeys, IntList[] gramIds, int gramCount) {
+        this.arena = arena;
+        this.arenaSize = arena.length;
+        this.ends = ends;
+        this.gramKeys = gramKeys;
+        this.gramIds = gramIds;
+        this.gramCount = gramCount;
+    }
+
+    /**
+     * Writes the titles and the postings table to a binary snapshot. The postings are written
+     * as one array, with the number of ids in every slot, or -1 for an empty slot, before it.
+     *
+     * @param out the snapshot to write to
+     * @throws IOException if the snapshot cannot be written
+     */
+    void writeTo(BinarySnapshot.Output out) throws IOException {
+        out.writeBytes(arena, arenaSize);
+        out.writeInts(ends.array(), ends.size());
+        out.writeLongs(gramKeys, gramKeys.length);
+        int[] sizes = new int[gramIds.length];
+        long total = 0;
+        for (int slot = 0; slot < gramIds.length; slot++) {
+            sizes[slot] = gramIds[slot] == null ? -1 : gramIds[slot].size();
+            total += Math.max(sizes[slot], 0);
+        }
+        if (total > Integer.MAX_VALUE / 4) {
+            throw new IOException("The title index is too large for a binary snapshot");
+        }
+        out.writeInts(sizes, sizes.length);
+        out.writeInt((int) total);
+        for (IntList ids : gramIds) {
+            if (ids != null) {
+                out.writeRawInts(ids.array(), ids.size());
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo} from a binary snapshot.
+     *
+     * @param in the snapshot to read from
+     * @return the index
+     * @throws IOException if the snapshot cannot be read
+     */
+    static TitleIndex readFrom(BinarySnapshot.Input in) throws IOException {
+        byte[] arena = in.readBytes();
+        IntList ends = new IntList(in.readInts());
+        long[] gramKeys = in.readLongs();
+        int[] sizes = in.readInts();
+        int[] postings = in.readInts();
+        IntList[] gramIds = new IntList[gramKeys.length];
+        int gramCount = 0;
+        int position = 0;
+        for (int slot = 0; slot < sizes.length; slot++) {
+            if (sizes[slot] >= 0) {
+                gramIds[slot] = new IntList(Arrays.copyOfRange(postings, position, position + sizes[slot]));
+                position += sizes[slot];
+                gramCount++;
+            }
+        }
+        return new TitleIndex(arena, ends, gramKeys, gramIds, gramCount);
+    }
+
+    /**
+     * Returns the number of titles in the index.
+     *
+     * @return the number of indexed titles
+     */
+    int size() {
+        return ends.size();
+    }
+
+    /**
+     * Returns the number of bytes the encoded titles take in the arena.
+     *
+     * @return the length of the encoded titles
+     */
+    int arenaSize() {
+        return arenaSize;
+    }
+
+    /**
+     * Returns the array holding the encoded lower-cased titles. Titles are only ever appended,
+     * so the bytes of the titles added so far never change, even after the array is replaced
+     * by a larger one.
+     *
+     * @return the encoded titles
+     */
+    byte[] arena() {
+        return arena;
+    }
+
+    /**
+     * Returns the position in {@link #arena()} of the first byte of a title.
+     *
+     * @param id the id of the title
+     * @return the start of the encoded title
+     */
+    int start(int id) {
+        return id == 0 ? 0 : ends.get(id - 1);
+    }
+
+    /**
+     * Returns the position in {@link #arena()} after the last byte of a title.
+     *
+     * @param id the id of the title
+     * @return the end of the encoded title
+     */
+    int end(int id) {
+        return ends.get(id);
+    }
+
+    /**
+     * Lower-cases and encodes a keyword the same way as the titles in the arena.
+     *
+     * @param keyword the keyword to encode
+     * @return the encoded keyword
+     */
+    static byte[] encodeKeyword(String keyword) {
+        String folded = keyword.toLowerCase();
+        byte[] pattern = new byte[encodedLength(folded)];
+        encode(folded, pattern, 0);
+        return pattern;
+    }
+
+    /**
+     * Adds a title to the index. The title gets the next id, which is the number of
+     * titles added before it.
+     *
+     * @param title the title to add
+     */
+    void add(String title) {
+        String folded = title.toLowerCase();
+        int id = ends.size();
+
+        int length = encodedLength(folded);
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        arenaSize = encode(folded, arena, arenaSize);
+        ends.add(arenaSize);
+
+        for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) {
+            IntList ids = postingsFor(gram(folded, i));
+            // A title repeating a trigram is only listed once
+            if (ids.last() != id) {
+                ids.add(id);
+            }
+        }
+    }
+
+    /**
+     * Appends all titles of another index, which get the next ids in the order they have
+     * in the other index. Used to merge indexes that were built in parallel.
+     *
+     * @param other the index to append
+     */
+    void addAll(TitleIndex other) {
+        int idOffset = ends.size();
+        int arenaOffset = arenaSize;
+        if (arenaSize + other.arenaSize > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + other.arenaSize));
+        }
+        System.arraycopy(other.arena, 0, arena, arenaSize, other.arenaSize);
+        arenaSize += other.arenaSize;
+        ends.addAll(other.ends, arenaOffset);
+
+        for (int slot = 0; slot < other.gramIds.length; slot++) {
+            if (other.gramIds[slot] != null) {
+                postingsFor(other.gramKeys[slot]).addAll(other.gramIds[slot], idOffset);
+            }
+        }
+    }
+
+    /**
+     * Searches the index for titles containing the keyword, ignoring case.
+     *
+     * @param keyword the keyword to search for
+     * @return the ids of the matching titles, in the order they were added
+     */
+    IntList search(String keyword) {
+        IntList result = new IntList();
+        PrimitiveIterator.OfInt ids = matchIds(keyword);
+        while (ids.hasNext()) {
+            result.add(ids.nextInt());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids of the titles containing the keyword, ignoring case, in the order they
+     * were added. The titles are only checked while iterating, so taking the first few matches
+     * costs the same no matter how many titles match in total.
+     *
+     * @param keyword the keyword to search for
+     * @return an iterator over the ids of the matching titles
+     */
+    PrimitiveIterator.OfInt matchIds(String keyword) {
+        return iterator(keyword, false);
+    }
+
+    /**
+     * Passes every title containing the keyword, ignoring case, to the consumer together with
+     * where the keyword was found: {@link #PREFIX_MATCH} if the title starts with it,
+     * {@link #WORD_MATCH} if a word of the title starts with it, and {@link #SUBSTRING_MATCH} otherwise.
+     * A word starts after any ASCII char that is not a letter or digit.
+     *
+     * @param keyword  the keyword to search for
+     * @param consumer the consumer of the matching ids and their match kinds
+     */
+    void forEachMatch(String keyword, MatchConsumer consumer) {
+        MatchIterator ids = iterator(keyword, true);
+        while (ids.hasNext()) {
+            int id = ids.nextInt();
+            consumer.accept(id, ids.kind);
+        }
+    }
+
+    /**
+     * Creates an iterator over the titles containing the keyword, ignoring case.
+     *
+     * @param keyword the keyword to search for
+     * @param ranked  true to find out the match kind of every match
+     * @return an iterator over the ids of the matching titles
+     */
+    private MatchIterator iterator(String keyword, boolean ranked) {
+        String folded = keyword.toLowerCase();
+        byte[] pattern = new byte[encodedLength(folded)];
+        encode(folded, pattern, 0);
+
+        // Keywords shorter than a trigram cannot use the postings, so all titles are checked
+        if (folded.length() < GRAM_LENGTH) {
+            return new MatchIterator(arena, ends.array(), null, ends.size(), pattern, ranked);
+        }
+
+        IntList candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) {
+            IntList ids = postings(gram(folded, i));
+            if (ids == null) {
+                return new MatchIterator(arena, ends.array(), new int[0], 0, pattern, ranked);
+            }
+            if (candidates == null || ids.size() < candidates.size()) {
+                candidates = ids;
+            }
+        }
+        return new MatchIterator(arena, ends.array(), candidates.array(), candidates.size(), pattern, ranked);
+    }
+
+    /**
+     * Returns the number of titles a search for the keyword checks, which is the number of
+     * titles under its rarest trigram, or all titles for a keyword shorter than a trigram.
+     * Allocates nothing.
+     *
+     * @param folded the lower-cased keyword
+     * @return the number of candidate titles
+     */
+    int candidates(String folded) {
+        if (folded.length() < GRAM_LENGTH) {
+            return ends.size();
+        }
+        int candidates = Integer.MAX_VALUE;
+        for (int i = 0; i + GRAM_LENGTH <= folded.length(); i++) {
+            IntList ids = postings(gram(folded, i));
+            if (ids == null) {
+                return 0;
+            }
+            candidates = Math.min(candidates, ids.size());
+        }
+        return candidates;
+    }
+
+    /**
+     * Looks up the ids of the titles containing a trigram.
+     *
+     * @param gram the trigram key
+     * @return the ids, or null if no title contains the trigram
+     */
+    private IntList postings(long gram) {
+        long[] keys = gramKeys;
+        IntList[] ids = gramIds;
+        int mask = keys.length - 1;
+        int slot = slot(gram, mask);
+        for (int probes = 0; probes <= mask; probes++) {
+            if (ids[slot] == null) {
+                return null;
+            }
+            if (keys[slot] == gram) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the ids of the titles containing a trigram, adding an empty list if there are none yet.
+     *
+     * @param gram the trigram key
+     * @return the ids of the titles containing the trigram
+     */
+    private IntList postingsFor(long gram) {
+        int mask = gramKeys.length - 1;
+        int slot = slot(gram, mask);
+        while (gramIds[slot] != null) {
+            if (gramKeys[slot] == gram) {
+                return gramIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        IntList ids = new IntList();
+        gramKeys[slot] = gram;
+        gramIds[slot] = ids;
+        if (++gramCount * 4 > gramKeys.length * 3) {
+            growPostings();
+        }
+        return ids;
+    }
+
+    /**
+     * Doubles the size of the postings table. The new table is filled before it replaces the old one.
+     */
+    private void growPostings() {
+        long[] keys = new long[gramKeys.length * 2];
+        IntList[] ids = new IntList[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < gramKeys.length; i++) {
+            if (gramIds[i] != null) {
+                int slot = slot(gramKeys[i], mask);
+                while (ids[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = gramKeys[i];
+                ids[slot] = gramIds[i];
+            }
+        }
+        gramIds = ids;
+        gramKeys = keys;
+    }
+
+    /**
+     * Checks whether the lower-cased title with the specified id contains the encoded pattern.
+     *
+     * @param arena   the encoded lower-cased titles
+     * @param ends    the end of every title in the arena
+     * @param id      the id of the title
+     * @param pattern the encoded lower-cased keyword
+     * @return true if the title contains the pattern
+     */
+    private static boolean matches(byte[] arena, int[] ends, int id, byte[] pattern) {
+        int start = id == 0 ? 0 : ends[id - 1];
+        return pattern.length == 0 || ByteSearch.indexOf(arena, start, ends[id], pattern) >= 0;
+    }
+
+    /**
+     * Finds the best place where the lower-cased title with the specified id contains the encoded pattern.
+     * The first occurrence is the only one that can be at the start of the title, so the title
+     * is only scanned further while every occurrence found so far is inside a word.
+     *
+     * @param arena   the encoded lower-cased titles
+     * @param ends    the end of every title in the arena
+     * @param id      the id of the title
+     * @param pattern the encoded lower-cased keyword
+     * @return the match kind, or 0 if the title does not contain the pattern
+     */
+    private static int matchKind(byte[] arena, int[] ends, int id, byte[] pattern) {
+        int start = id == 0 ? 0 : ends[id - 1];
+        int last = ends[id] - pattern.length;
+        int kind = 0;
+
+        for (int i = start; i <= last; i++) {
+            int j = 0;
+            while (j < pattern.length && arena[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                if (i == start) {
+                    return PREFIX_MATCH;
+                }
+                byte before = arena[i - 1];
+                if (before >= 0 && !Character.isLetterOrDigit(before)) {
+                    return WORD_MATCH;
+                }
+                kind = SUBSTRING_MATCH;
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the preferred slot of a trigram key in a table of the specified size.
+     *
+     * @param gram the trigram key
+     * @param mask the size of the table minus one, where the size is a power of two
+     * @return the slot to start probing at
+     */
+    private static int slot(long gram, int mask) {
+        long hash = gram * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Packs the three chars starting at the specified position into a single key.
+     *
+     * @param text     the lower-cased text
+     * @param position the position of the first char
+     * @return the trigram key
+     */
+    private static long gram(String text, int position) {
+        return ((long) text.charAt(position) << 32)
+                | ((long) text.charAt(position + 1) << 16)
+                | text.charAt(position + 2);
+    }
+
+    /**
+     * Returns the number of bytes needed to encode the text.
+     *
+     * @param text the text to measure
+     * @return the encoded length in bytes
+     */
+    private static int encodedLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Encodes every char of the text on its own into the destination array.
+     *
+     * @param text        the text to encode
+     * @param destination the array to write to, large enough for the encoded text
+     * @param position    the position to start writing at
+     * @return the position after the last written byte
+     */
+    private static int encode(String text, byte[] destination, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                destination[position++] = (byte) c;
+            } else if (c < 0x800) {
+                destination[position++] = (byte) (0xC0 | (c >> 6));
+                destination[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                destination[position++] = (byte) (0xE0 | (c >> 12));
+                destination[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                destination[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Receives the ids of matching titles together with their match kinds.
+     */
+    interface MatchConsumer {
+        /**
+         * Receives a matching title.
+         *
+         * @param id   the id of the title
+         * @param kind the match kind, one of {@link #PREFIX_MATCH}, {@link #WORD_MATCH}
+         *             and {@link #SUBSTRING_MATCH}
+         */
+        void accept(int id, int kind);
+    }
+
+    /**
+     * Checks candidate titles one at a time while iterating, and returns those that contain the pattern.
+     */
+    private static final class MatchIterator implements PrimitiveIterator.OfInt {
+        private final byte[] arena;
+        private final int[] ends;
+        private final int[] candidates;
+        private final int count;
+        private final byte[] pattern;
+        private final boolean ranked;
+        private int position;
+        private int next;
+        private int kind;
+
+        /**
+         * Constructs a MatchIterator.
+         *
+         * @param arena      the encoded lower-cased titles
+         * @param ends       the end of every title in the arena
+         * @param candidates the ids to check, or null to check every id below count
+         * @param count      the number of candidates
+         * @param pattern    the encoded lower-cased keyword
+         * @param ranked     true to find out the match kind of every match
+         */
+        MatchIterator(byte[] arena, int[] ends, int[] candidates, int count, byte[] pattern, boolean ranked) {
+            this.arena = arena;
+            this.ends = ends;
+            this.candidates = candidates;
+            this.count = count;
+            this.pattern = pattern;
+            this.ranked = ranked;
+            this.next = -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (candidates == null && !ranked && pattern.length > 0) {
+                return scanNext();
+            }
+            while (next < 0 && position < count) {
+                int id = candidates == null ? position : candidates[position];
+                position++;
+                if (ranked) {
+                    kind = matchKind(arena, ends, id, pattern);
+                    if (kind > 0) {
+                        next = id;
+                    }
+                } else if (matches(arena, ends, id, pattern)) {
+                    next = id;
+                }
+            }
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int id = next;
+            next = -1;
+            return id;
+        }
+
+        /**
+         * Finds the next matching title when every title has to be checked, by searching the
+         * whole arena for the pattern at once instead of one title after another.
+         * An occurrence that runs past the end of its title is not a match, and neither is
+         * any later one in the same title, so the search goes on at the next title.
+         *
+         * @return true if there is a next match
+         */
+        private boolean scanNext() {
+            while (next < 0 && position < count) {
+                int from = position == 0 ? 0 : ends[position - 1];
+                int found = ByteSearch.indexOf(arena, from, ends[count - 1], pattern);
+                if (found < 0) {
+                    position = count;
+                    break;
+                }
+                while (ends[position] <= found) {
+                    position++;
+                }
+                if (found + pattern.length <= ends[position]) {
+                    next = position;
+                }
+                position++;
+            }
+            return next >= 0;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package moviedatabase.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of one MovieDatabase: how long loading took, the latencies and row counts of
+ * title searches, review score searches and saves, and the number of bytes written to disk.
+ * <p>
+ * Metrics are disabled until {@link #setEnabled(boolean)} is called, and while they are
+ * disabled an operation only reads one volatile flag, so the searches stay free of allocations
+ * and clock reads. Loading is always measured, since it happens once before metrics can be enabled.
+ * <p>
+ * The metrics can be published as an MXBean, so that JMX clients can read them, and printed
+ * at a fixed rate.
+ */
+public class DatabaseMetrics implements DatabaseMetricsMXBean, AutoCloseable {
+    private final OperationMetrics titleSearches;
+    private final OperationMetrics reviewScoreSearches;
+    private final OperationMetrics saves;
+    private final LongSupplier bytesWritten;
+    private volatile boolean enabled;
+    private volatile long loadNanos;
+    private volatile long loadedRows;
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Constructs a DatabaseMetrics object, with metrics disabled.
+     *
+     * @param bytesWritten the counter of the bytes the database has written to disk
+     */
+    public DatabaseMetrics(LongSupplier bytesWritten) {
+        this.titleSearches = new OperationMetrics("searchByTitle");
+        this.reviewScoreSearches = new OperationMetrics("searchByReviewScore");
+        this.saves = new OperationMetrics("saveMovies");
+        this.bytesWritten = bytesWritten;
+    }
+
+    /**
+     * Returns the start time of an operation to pass to {@link #record}.
+     *
+     * @return the current time in nanoseconds, or 0 if metrics are disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an operation that was started with {@link #start()}.
+     * Does nothing if metrics were disabled when the operation started.
+     *
+     * @param operation    the metrics of the operation
+     * @param start        the value returned by {@link #start()}
+     * @param rowsScanned  the number of rows the operation looked at
+     * @param rowsReturned the number of rows the operation returned or added
+     */
+    public void record(OperationMetrics operation, long start, long rowsScanned, long rowsReturned) {
+        if (start != 0) {
+            operation.record(System.nanoTime() - start, rowsScanned, rowsReturned);
+        }
+    }
+
+    /**
+     * Records how long loading the database took.
+     *
+     * @param nanos the time it took, in nanoseconds
+     * @param rows  the number of movies loaded
+     */
+    public void recordLoad(long nanos, long rows) {
+        this.loadNanos = nanos;
+        this.loadedRows = rows;
+    }
+
+    /**
+     * Returns the metrics of title searches.
+     *
+     * @return the title search metrics
+     */
+    public OperationMetrics titleSearches() {
+        return titleSearches;
+    }
+
+    /**
+     * Returns the metrics of review score searches.
+     *
+     * @return the review score search metrics
+     */
+    public OperationMetrics reviewScoreSearches() {
+        return reviewScoreSearches;
+    }
+
+    /**
+     * Returns the metrics of saved batches of movies.
+     *
+     * @return the save metrics
+     */
+    public OperationMetrics saves() {
+        return saves;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public double getLoadMillis() {
+        return loadNanos / 1e6;
+    }
+
+    @Override
+    public long getLoadedRows() {
+        return loadedRows;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.getAsLong();
+    }
+
+    @Override
+    public OperationStats getTitleSearches() {
+        return titleSearches.stats();
+    }
+
+    @Override
+    public OperationStats getReviewScoreSearches() {
+        return reviewScoreSearches.stats();
+    }
+
+    @Override
+    public OperationStats getSaves() {
+        return saves.stats();
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server under
+     * "moviedatabase:type=MovieDatabase,name=" followed by the specified name.
+     * In case of any errors, an error message is printed to the console.
+     *
+     * @param name the name that tells this database apart from others, such as its file name
+     */
+    public synchronized void registerMBean(String name) {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            ObjectName newName = new ObjectName("moviedatabase:type=MovieDatabase,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+            objectName = newName;
+        } catch (JMException e) {
+            System.out.println("An error occurred while registering the metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the metrics to a stream at a fixed rate, from a background thread.
+     * Replaces an earlier report.
+     *
+     * @param out    the stream to print to
+     * @param period the time between two reports
+     * @param unit   the unit of the period
+     */
+    public synchronized void startReporting(PrintStream out, long period, TimeUnit unit) {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "movie-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.println(this), period, period, unit);
+    }
+
+    /**
+     * Stops printing the metrics.
+     */
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdown();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Stops printing the metrics and removes them from the MBean server.
+     */
+    @Override
+    public synchronized void close() {
+        stopReporting();
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.out.println("An error occurred while unregistering the metrics: " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "load: %.1fms, rows=%d%n", getLoadMillis(), loadedRows)
+                + titleSearches.getName() + ": " + getTitleSearches() + System.lineSeparator()
+                + reviewScoreSearches.getName() + ": " + getReviewScoreSearches() + System.lineSeparator()
+                + saves.getName() + ": " + getSaves() + System.lineSeparator()
+                + "bytesWritten: " + getBytesWritten();
+    }
+}
@@ -0,0 +1,62 @@
+package moviedatabase.metrics;
+
+/**
+ * The management interface of {@link DatabaseMetrics}, as shown by JMX clients such as JConsole.
+ */
+public interface DatabaseMetricsMXBean {
+    /**
+     * Returns whether operations are measured.
+     *
+     * @return true if metrics are enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Sets whether operations are measured.
+     *
+     * @param enabled true to enable metrics
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns how long loading the database took.
+     *
+     * @return the load time in milliseconds
+     */
+    double getLoadMillis();
+
+    /**
+     * Returns the number of movies that were loaded.
+     *
+     * @return the number of loaded movies
+     */
+    long getLoadedRows();
+
+    /**
+     * Returns the number of bytes the database has written to disk.
+     *
+     * @return the number of bytes written
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns the counters of title searches.
+     *
+     * @return the title search counters
+     */
+    OperationStats getTitleSearches();
+
+    /**
+     * Returns the counters of review score searches.
+     *
+     * @return the review score search counters
+     */
+    OperationStats getReviewScoreSearches();
+
+    /**
+     * Returns the counters of saved batches of movies.
+     *
+     * @return the save counters
+     */
+    OperationStats getSaves();
+}
@@ -0,0 +1,69 @@
+package moviedatabase.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies of one kind of operation, together with how many rows the operations looked at
+ * and how many they returned. Recording allocates nothing and can be called from many threads at once.
+ */
+public final class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latencies;
+    private final LongAdder rowsScanned;
+    private final LongAdder rowsReturned;
+
+    /**
+     * Constructs an OperationMetrics object for the operation with the specified name.
+     *
+     * @param name the name of the operation
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+        this.latencies = new LatencyHistogram();
+        this.rowsScanned = new LongAdder();
+        this.rowsReturned = new LongAdder();
+    }
+
+    /**
+     * Records one operation.
+     *
+     * @param nanos        how long the operation took, in nanoseconds
+     * @param rowsScanned  the number of rows the operation looked at
+     * @param rowsReturned the number of rows the operation returned or added
+     */
+    public void record(long nanos, long rowsScanned, long rowsReturned) {
+        latencies.record(nanos);
+        this.rowsScanned.add(rowsScanned);
+        this.rowsReturned.add(rowsReturned);
+    }
+
+    /**
+     * Returns the name of the operation.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the histogram of the latencies of the operation.
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the current counters of the operation.
+     *
+     * @return the counters at this point in time
+     */
+    public OperationStats stats() {
+        return new OperationStats(latencies.getCount(), rowsScanned.sum(), rowsReturned.sum(),
+                latencies.getMean() / 1000, latencies.getValueAtPercentile(50) / 1000.0,
+                latencies.getValueAtPercentile(99) / 1000.0, latencies.getValueAtPercentile(99.9) / 1000.0,
+                latencies.getMax() / 1000.0);
+    }
+}
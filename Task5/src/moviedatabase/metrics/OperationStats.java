@@ -0,0 +1,120 @@
+package moviedatabase.metrics;
+
+import java.util.Locale;
+
+/**
+ * The counters of one kind of operation at one point in time, with latencies in microseconds.
+ */
+public final class OperationStats {
+    private final long count;
+    private final long rowsScanned;
+    private final long rowsReturned;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    /**
+     * Constructs an OperationStats object with the specified counters.
+     *
+     * @param count        the number of operations
+     * @param rowsScanned  the number of rows the operations looked at
+     * @param rowsReturned the number of rows the operations returned or added
+     * @param meanMicros   the mean latency
+     * @param p50Micros    the median latency
+     * @param p99Micros    the 99th percentile of the latencies
+     * @param p999Micros   the 99.9th percentile of the latencies
+     * @param maxMicros    the largest latency
+     */
+    OperationStats(long count, long rowsScanned, long rowsReturned, double meanMicros, double p50Micros,
+                   double p99Micros, double p999Micros, double maxMicros) {
+        this.count = count;
+        this.rowsScanned = rowsScanned;
+        this.rowsReturned = rowsReturned;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * Returns the number of operations.
+     *
+     * @return the number of operations
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of rows the operations looked at.
+     *
+     * @return the number of scanned rows
+     */
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    /**
+     * Returns the number of rows the operations returned or added.
+     *
+     * @return the number of returned rows
+     */
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return the mean latency in microseconds
+     */
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    /**
+     * Returns the median latency.
+     *
+     * @return the median latency in microseconds
+     */
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    /**
+     * Returns the 99th percentile of the latencies.
+     *
+     * @return the 99th percentile in microseconds
+     */
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * Returns the 99.9th percentile of the latencies.
+     *
+     * @return the 99.9th percentile in microseconds
+     */
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    /**
+     * Returns the largest latency.
+     *
+     * @return the largest latency in microseconds
+     */
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "count=%d, scanned=%d, returned=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, p99.9=%.1fus, max=%.1fus",
+                count, rowsScanned, rowsReturned, meanMicros, p50Micros, p99Micros, p999Micros, maxMicros);
+    }
+}
@@ -0,0 +1,358 @@
+package moviedatabase.server;
+
+import moviedatabase.data.MovieDatabase;
+import moviedatabase.model.Movie;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * A TCP server that lets clients query and add to a movie database with a line protocol.
+ * Every request is one line, and every response ends with a line starting with "END", "OK" or "ERROR":
+ * <pre>
+ * TITLE keyword        -&gt; MOVIE title,reviewScore ... END count
+ * SCORE minimum        -&gt; MOVIE title,reviewScore ... END count
+ * ADD title,score      -&gt; OK
+ * QUIT                 -&gt; closes the connection
+ * </pre>
+ * Lines are read and written as UTF-8. Search results are streamed to the client while
+ * they are found, so the first movies arrive without waiting for the whole result.
+ * A request line longer than {@value #MAX_LINE_LENGTH} chars is answered with an error
+ * and the connection is closed.
+ * <p>
+ * Anyone who can connect can add movies, so by default the server only listens on the loopback
+ * address. Listening on other addresses has to be asked for explicitly.
+ * <p>
+ * Every connection is served by its own thread. When the server runs on Java 21 or later these
+ * are virtual threads, so a blocked client costs little more than its socket. On Java 17, which
+ * the build targets, every connection takes a platform thread with its own stack.
+ */
+public class MovieServer implements AutoCloseable {
+    private static final int BACKLOG = 4096;
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+    /**
+     * The maximum number of chars in a request line.
+     */
+    public static final int MAX_LINE_LENGTH = 8192;
+
+    private final MovieDatabase movieDatabase;
+    private final InetAddress bindAddress;
+    private final int requestedPort;
+    private final Set<Socket> connections;
+    private ServerSocket serverSocket;
+    private ExecutorService connectionExecutor;
+    private Thread acceptor;
+
+    /**
+     * Constructs a MovieServer for the specified database that listens on the loopback address.
+     *
+     * @param movieDatabase the database to serve
+     * @param port          the port to listen on, or 0 to pick a free port
+     */
+    public MovieServer(MovieDatabase movieDatabase, int port) {
+        this(movieDatabase, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Constructs a MovieServer for the specified database that listens on the specified address.
+     *
+     * @param movieDatabase the database to serve
+     * @param bindAddress   the local address to listen on, or the wildcard address for all of them
+     * @param port          the port to listen on, or 0 to pick a free port
+     */
+    public MovieServer(MovieDatabase movieDatabase, InetAddress bindAddress, int port) {
+        this.movieDatabase = movieDatabase;
+        this.bindAddress = bindAddress;
+        this.requestedPort = port;
+        this.connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Starts listening for connections. Connections are accepted on a separate thread,
+     * so this method returns as soon as the server is ready.
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, requestedPort), BACKLOG);
+        connectionExecutor = newConnectionExecutor();
+        acceptor = new Thread(this::acceptConnections, "movie-server");
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port the server listens on, which is useful when it was started on port 0.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public void close() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while closing the server: " + e.getMessage());
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdownNow();
+        }
+        if (acceptor != null) {
+            try {
+                acceptor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Accepts connections until the server socket is closed, and hands each one to its own thread.
+     * After a failed accept, for example when the process has run out of file descriptors,
+     * it waits a moment before trying again instead of spinning.
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.out.println("An error occurred while accepting a connection: " + e.getMessage());
+                    try {
+                        Thread.sleep(ACCEPT_RETRY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            connections.add(socket);
+            try {
+                connectionExecutor.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                connections.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Reads requests from a connection and answers them until the client quits or disconnects.
+     *
+     * @param socket the connection to serve
+     */
+    private void serve(Socket socket) {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            StringBuilder buffer = new StringBuilder();
+            String line;
+            while ((line = readLine(in, buffer)) != null) {
+                if (line.length() > MAX_LINE_LENGTH) {
+                    writeLine(out, "ERROR Request longer than " + MAX_LINE_LENGTH + " chars");
+                    break;
+                }
+                if (!handle(line.trim(), out)) {
+                    break;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client disconnected or the server is closing
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Reads a request line without its line break. At most one char more than
+     * {@value #MAX_LINE_LENGTH} is read, so a line that is too long is noticed without keeping it.
+     *
+     * @param in     the reader to read from
+     * @param buffer the buffer to collect the line in, which is reused between lines
+     * @return the line, which is longer than the maximum if the line is too long,
+     *         or null at the end of the stream
+     * @throws IOException if the line cannot be read
+     */
+    private static String readLine(Reader in, StringBuilder buffer) throws IOException {
+        buffer.setLength(0);
+        while (buffer.length() <= MAX_LINE_LENGTH) {
+            int c = in.read();
+            if (c < 0) {
+                return buffer.length() == 0 ? null : buffer.toString();
+            }
+            if (c == '\n') {
+                int end = buffer.length();
+                if (end > 0 && buffer.charAt(end - 1) == '\r') {
+                    buffer.setLength(end - 1);
+                }
+                return buffer.toString();
+            }
+            buffer.append((char) c);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Answers a single request.
+     *
+     * @param request the request line
+     * @param out     the writer to send the response to
+     * @return false if the client asked to close the connection
+     * @throws IOException if the response cannot be written
+     */
+    private boolean handle(String request, Writer out) throws IOException {
+        int space = request.indexOf(' ');
+        String command = (space < 0 ? request : request.substring(0, space)).toUpperCase();
+        String argument = space < 0 ? "" : request.substring(space + 1).trim();
+
+        switch (command) {
+            case "TITLE":
+                writeMovies(movieDatabase.streamByTitle(argument), out);
+                return true;
+            case "SCORE":
+                int minReviewScore;
+                try {
+                    minReviewScore = Integer.parseInt(argument);
+                } catch (NumberFormatException e) {
+                    writeLine(out, "ERROR Invalid review score: " + argument);
+                    return true;
+                }
+                writeMovies(movieDatabase.streamByReviewScore(minReviewScore, Integer.MAX_VALUE), out);
+                return true;
+            case "ADD":
+                addMovie(argument, out);
+                return true;
+            case "QUIT":
+                return false;
+            default:
+                writeLine(out, "ERROR Unknown command: " + command);
+                return true;
+        }
+    }
+
+    /**
+     * Adds the movie in an ADD request, given as "title,score" where score is a number from 1 to 5.
+     *
+     * @param argument the title and score
+     * @param out      the writer to send the response to
+     * @throws IOException if the response cannot be written
+     */
+    private void addMovie(String argument, Writer out) throws IOException {
+        int comma = argument.lastIndexOf(',');
+        if (comma < 0) {
+            writeLine(out, "ERROR Expected: ADD title,score");
+            return;
+        }
+        String title = argument.substring(0, comma).trim();
+        String reviewScore = argument.substring(comma + 1).trim();
+        int score;
+        try {
+            score = Integer.parseInt(reviewScore);
+        } catch (NumberFormatException e) {
+            score = 0;
+        }
+        if (score < 1 || score > 5) {
+            writeLine(out, "ERROR Invalid review score: " + reviewScore);
+            return;
+        }
+        try {
+            movieDatabase.addMovies(Collections.singletonList(new Movie(title, reviewScore)));
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            writeLine(out, "ERROR " + e.getMessage());
+            return;
+        }
+        writeLine(out, "OK");
+    }
+
+    /**
+     * Writes the movies of a search result as they are found, followed by their number.
+     * The stream is closed afterwards, also when the response cannot be written.
+     *
+     * @param movies the movies to write
+     * @param out    the writer to send the response to
+     * @throws IOException if the response cannot be written
+     */
+    private void writeMovies(Stream<Movie> movies, Writer out) throws IOException {
+        int count = 0;
+        try (movies) {
+            Iterator<Movie> iterator = movies.iterator();
+            while (iterator.hasNext()) {
+                Movie movie = iterator.next();
+                out.write("MOVIE ");
+                out.write(movie.getTitle());
+                out.write(',');
+                out.write(movie.getReviewScore());
+                out.write('\n');
+                count++;
+            }
+        }
+        writeLine(out, "END " + count);
+    }
+
+    private static void writeLine(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do with a socket that cannot be closed
+        }
+    }
+
+    /**
+     * Creates the executor that runs one thread per connection. Virtual threads are looked up
+     * by reflection, so the server still compiles and runs on Java versions without them.
+     *
+     * @return an executor starting a new thread for every task
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "movie-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -3,14 +3,21 @@ package moviedatabase.ui;
 import moviedatabase.data.MovieDatabase;
 import moviedatabase.model.Movie;
 
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 /**
  * A command line user interface for a movie database.
  */
 public class MovieDatabaseUI {
+	private static final int PAGE_SIZE = 20;
+
 	private Scanner _scanner;
 	private MovieDatabase _movieDatabase;
 
@@ -90,8 +97,9 @@ public class MovieDatabaseUI {
 		System.out.print("Enter a keyword: ");
 		String title = _scanner.nextLine().trim();
 
-		List<Movie> result = _movieDatabase.searchByTitle(title);
-		printMovies(result);
+		try (Stream<Movie> movies = _movieDatabase.streamByTitle(title)) {
+			printMovies(movies);
+		}
 	}
 
 	/**
@@ -101,8 +109,9 @@ public class MovieDatabaseUI {
 	private void searchReviewScore() {
 		int review = getNumberInput(_scanner, 1, 5, "Enter the minimum review score (1 - 5): ");
 
-		List<Movie> result = _movieDatabase.searchByReviewScore(review);
-		printMovies(result);
+		try (Stream<Movie> movies = _movieDatabase.streamByReviewScore(review, Integer.MAX_VALUE)) {
+			printMovies(movies);
+		}
 	}
 
 	/**
@@ -114,24 +123,61 @@ public class MovieDatabaseUI {
 		System.out.print("Enter the review score (1 - 5): ");
 		String reviewScore = _scanner.nextLine().trim();
 		Movie movie = new Movie(title, reviewScore);
-		_movieDatabase.addMovie(movie);
+		try {
+			_movieDatabase.addMovie(movie);
+		} catch (UncheckedIOException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
 		System.out.println("Movie added successfully.");
 	}
 
 	/**
-	 * Prints the movies in the specified list.
+	 * Prints the movies in the specified stream, one page at a time.
+	 * The movies are taken from the stream as they are printed, and after every page the user
+	 * is asked whether to continue, so the first page is shown without waiting for the rest.
 	 *
-	 * @param movies the list of movies to print
+	 * @param movies the stream of movies to print
 	 */
-	private void printMovies(List<Movie> movies) {
-		if (movies.isEmpty()) {
+	private void printMovies(Stream<Movie> movies) {
+		Iterator<Movie> iterator = movies.iterator();
+		if (!iterator.hasNext()) {
 			System.out.println("No movies found.");
-		} else {
-			System.out.println("-----------------------");
-			for (Movie movie : movies) {
-				System.out.println("Title: " + movie.getTitle() + " Review score: " + movie.getReviewScore());
+			return;
+		}
+
+		// Not closed, since closing it would close System.out
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+		out.println("-----------------------");
+		int printed = 0;
+		while (iterator.hasNext()) {
+			Movie movie = iterator.next();
+			out.append("Title: ").append(movie.getTitle())
+					.append(" Review score: ").append(movie.getReviewScore()).println();
+			printed++;
+
+			if (printed % PAGE_SIZE == 0 && iterator.hasNext()) {
+				out.print("Showing " + printed + " movies. Press Enter for more, or q to stop: ");
+				out.flush();
+				if (!showMore()) {
+					break;
+				}
 			}
-			System.out.println("-----------------------");
+		}
+		out.println("-----------------------");
+		out.flush();
+	}
+
+	/**
+	 * Asks the user whether to show the next page of movies.
+	 *
+	 * @return true if the user wants to see more movies
+	 */
+	private boolean showMore() {
+		try {
+			return !_scanner.nextLine().trim().equalsIgnoreCase("q");
+		} catch (NoSuchElementException e) {
+			return false;
 		}
 	}
 
@@ -0,0 +1,110 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that a binary snapshot is only used while it is intact and matches the movie file.
+ */
+class BinarySnapshotTest {
+    private static final List<String> TITLES = List.of("The Matrix", "Forrest Gump", "Ärger im Paradies");
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private Path snapshot;
+
+    @BeforeEach
+    void writeSnapshot() throws IOException {
+        file = directory.resolve("Movies.txt");
+        snapshot = directory.resolve("Movies.txt.bin");
+        Files.writeString(file, "The Matrix,5/5\nForrest Gump,4/5\nÄrger im Paradies,2/5\n");
+        new MovieDatabase(file.toString()).close();
+        assertTrue(Files.exists(snapshot));
+    }
+
+    @Test
+    void opensTheSnapshotOfAnUnchangedFile() throws IOException {
+        for (StorageMode mode : StorageMode.values()) {
+            BinarySnapshot binarySnapshot = new BinarySnapshot(file);
+            assertTrue(binarySnapshot.open(mode), mode.name());
+            assertEquals(TITLES.size(), binarySnapshot.store().size());
+            assertEquals("Ärger im Paradies", binarySnapshot.store().getTitle(2));
+            assertEquals(1, binarySnapshot.titleIndex().search("gump").size());
+            assertEquals(2, binarySnapshot.scoreIndex().count(4, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void ignoresASnapshotWithAWrongChecksum() throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            long last = out.length() - 1;
+            out.seek(last);
+            int b = out.read();
+            out.seek(last);
+            out.write(b ^ 1);
+        }
+        assertFalse(new BinarySnapshot(file).open(StorageMode.HEAP));
+        assertEquals(TITLES, titles());
+    }
+
+    @Test
+    void ignoresATruncatedSnapshot() throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            out.setLength(out.length() - 4);
+        }
+        assertFalse(new BinarySnapshot(file).open(StorageMode.HEAP));
+
+        try (RandomAccessFile out = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            out.setLength(10);
+        }
+        assertFalse(new BinarySnapshot(file).open(StorageMode.HEAP));
+        assertEquals(TITLES, titles());
+    }
+
+    @Test
+    void ignoresTheSnapshotOfAFileThatGrew() throws IOException {
+        Files.writeString(file, Files.readString(file) + "Added later,3/5\n");
+        assertFalse(new BinarySnapshot(file).open(StorageMode.HEAP));
+        assertEquals(List.of("The Matrix", "Forrest Gump", "Ärger im Paradies", "Added later"), titles());
+    }
+
+    @Test
+    void ignoresTheSnapshotOfAFileThatWasRewrittenWithTheSameSize() throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "The Matrix,5/5\nForrest Gump,1/5\nÄrger im Paradies,2/5\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 60_000));
+        assertFalse(new BinarySnapshot(file).open(StorageMode.HEAP));
+    }
+
+    @Test
+    void rewritesAnOutdatedSnapshot() throws IOException {
+        Files.writeString(file, Files.readString(file) + "Added later,3/5\n");
+        new MovieDatabase(file.toString()).close();
+
+        BinarySnapshot binarySnapshot = new BinarySnapshot(file);
+        assertTrue(binarySnapshot.open(StorageMode.HEAP));
+        assertEquals(TITLES.size() + 1, binarySnapshot.store().size());
+    }
+
+    private List<String> titles() {
+        try (MovieDatabase db = new MovieDatabase(file.toString())) {
+            return db.searchByTitle("").stream().map(Movie::getTitle).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package moviedatabase.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the word-at-a-time search against a plain search, around the edges where the
+ * eight-byte steps give way to single bytes and where the zero byte test marks too much.
+ */
+class ByteSearchTest {
+    @Test
+    void findsAPatternAtTheStartAndTheEndOfTheRange() {
+        byte[] bytes = bytes("abcdefghijklmnopqrstuvwxyz");
+        assertEquals(0, ByteSearch.indexOf(bytes, 0, bytes.length, bytes("abc")));
+        assertEquals(23, ByteSearch.indexOf(bytes, 0, bytes.length, bytes("xyz")));
+        assertEquals(5, ByteSearch.indexOf(bytes, 5, 8, bytes("fgh")));
+    }
+
+    @Test
+    void doesNotFindAPatternThatCrossesTheEdgesOfTheRange() {
+        byte[] bytes = bytes("abcdefghijklmnopqrstuvwxyz");
+        assertEquals(-1, ByteSearch.indexOf(bytes, 0, 25, bytes("xyz")));
+        assertEquals(-1, ByteSearch.indexOf(bytes, 1, bytes.length, bytes("abc")));
+        assertEquals(-1, ByteSearch.indexOf(bytes, 20, 22, bytes("uvw")));
+        assertEquals(-1, ByteSearch.indexOf(bytes, 4, 4, bytes("e")));
+    }
+
+    @Test
+    void findsASingleByte() {
+        byte[] bytes = bytes("aaaaaaaaaaaaaaaaaaab");
+        assertEquals(19, ByteSearch.indexOf(bytes, 0, bytes.length, bytes("b")));
+        assertEquals(3, ByteSearch.indexOf(bytes, 3, bytes.length, bytes("a")));
+    }
+
+    @Test
+    void findsTheFirstOfSeveralMatchesInOneWord() {
+        byte[] bytes = bytes("xxabxxabxxabxxab");
+        assertEquals(2, ByteSearch.indexOf(bytes, 0, bytes.length, bytes("ab")));
+        assertEquals(6, ByteSearch.indexOf(bytes, 3, bytes.length, bytes("ab")));
+    }
+
+    @Test
+    void skipsPositionsWhereOnlyTheFirstAndLastBytesFit() {
+        byte[] bytes = bytes("axcaycazcabcaxc");
+        assertEquals(9, ByteSearch.indexOf(bytes, 0, bytes.length, bytes("abc")));
+    }
+
+    @Test
+    void findsPatternsLongerThanAWord() {
+        byte[] bytes = bytes("the quick brown fox jumps over the lazy dog");
+        assertEquals(31, ByteSearch.indexOf(bytes, 0, bytes.length, bytes("the lazy dog")));
+        assertEquals(-1, ByteSearch.indexOf(bytes, 0, bytes.length, bytes("the lazy cat")));
+    }
+
+    @Test
+    void findsZeroAndHighBytes() {
+        // The byte after a zero byte can be marked as zero as well, which must not end in a match
+        byte[] bytes = {1, 0, 1, (byte) 0x80, 0, (byte) 0xFF, 0, 0, 1, 1, 0, (byte) 0x80, (byte) 0xFF, 2};
+        assertEquals(1, ByteSearch.indexOf(bytes, 0, bytes.length, new byte[]{0, 1}));
+        assertEquals(6, ByteSearch.indexOf(bytes, 0, bytes.length, new byte[]{0, 0}));
+        assertEquals(11, ByteSearch.indexOf(bytes, 0, bytes.length, new byte[]{(byte) 0x80, (byte) 0xFF}));
+        assertEquals(-1, ByteSearch.indexOf(bytes, 0, bytes.length, new byte[]{(byte) 0xFF, (byte) 0xFF}));
+    }
+
+    @Test
+    void findsTheSameAsAPlainSearch() {
+        Random random = new Random(7);
+        byte[] alphabet = {0, 1, 'a', (byte) 0x7F, (byte) 0x80, (byte) 0xFF};
+        for (int run = 0; run < 20_000; run++) {
+            byte[] bytes = randomBytes(random, alphabet, random.nextInt(48));
+            byte[] pattern = randomBytes(random, alphabet, 1 + random.nextInt(10));
+            int from = random.nextInt(bytes.length + 1);
+            int to = from + random.nextInt(bytes.length - from + 1);
+            assertEquals(plainIndexOf(bytes, from, to, pattern), ByteSearch.indexOf(bytes, from, to, pattern));
+        }
+    }
+
+    private static int plainIndexOf(byte[] bytes, int from, int to, byte[] pattern) {
+        outer:
+        for (int i = from; i + pattern.length <= to; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] randomBytes(Random random, byte[] alphabet, int length) {
+        // Mostly one byte, so that matches and near misses are common
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = random.nextInt(3) == 0 ? alphabet[random.nextInt(alphabet.length)] : alphabet[0];
+        }
+        return bytes;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
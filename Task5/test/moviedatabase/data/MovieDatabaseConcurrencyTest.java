@@ -0,0 +1,99 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that searches running without a lock, while movies are added, only ever see whole adds,
+ * and retry instead of failing when they read an add that is half done.
+ */
+class MovieDatabaseConcurrencyTest {
+    private static final int SEEDS = 1000;
+    private static final int ADDED = 5000;
+    private static final int READERS = 4;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void searchesSeeEveryAddedMovieInOrderWhileMoviesAreAdded(StorageMode mode) throws Exception {
+        Path file = directory.resolve("Movies.txt");
+        StringBuilder movies = new StringBuilder();
+        for (int i = 0; i < SEEDS; i++) {
+            movies.append("Seed ").append(i).append(",3/5\n");
+        }
+        Files.writeString(file, movies);
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        try (MovieDatabase db = new MovieDatabase(file.toString(), mode)) {
+            AtomicBoolean adding = new AtomicBoolean(true);
+            List<Future<?>> readers = new ArrayList<>();
+            for (int reader = 0; reader < READERS; reader++) {
+                readers.add(executor.submit(() -> {
+                    int seen = 0;
+                    while (adding.get()) {
+                        seen = checkSearches(db, seen);
+                    }
+                    return null;
+                }));
+            }
+            Future<?> writer = executor.submit(() -> {
+                try {
+                    for (int i = 0; i < ADDED; i++) {
+                        db.addMovie(new Movie("Added " + i, "5"));
+                    }
+                } finally {
+                    adding.set(false);
+                }
+                return null;
+            });
+
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            assertEquals(ADDED, checkSearches(db, ADDED));
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Checks that the added movies found are the first ones added, in the order they were added,
+     * and that there are no fewer of them than a search before found.
+     *
+     * @return the number of added movies found
+     */
+    private static int checkSearches(MovieDatabase db, int seenBefore) {
+        List<Movie> found = db.searchByTitle("added");
+        assertTrue(found.size() >= seenBefore, "A search lost movies it had found before");
+        for (int i = 0; i < found.size(); i++) {
+            assertEquals("Added " + i, found.get(i).getTitle());
+        }
+
+        List<Movie> best = db.searchByReviewScore(5);
+        assertTrue(best.size() >= found.size());
+        for (Movie movie : best) {
+            assertEquals("5/5", movie.getReviewScore());
+        }
+        return found.size();
+    }
+}
@@ -0,0 +1,108 @@
+package moviedatabase.data;
+
+import moviedatabase.model.Movie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Tests that the journal is replayed after a restart, and that a crash in the middle of an append
+ * or of a compaction leaves nothing behind that is lost or read twice.
+ */
+class MovieJournalTest {
+    @TempDir
+    Path directory;
+
+    private Path file;
+
+    @BeforeEach
+    void writeMovieFile() throws IOException {
+        file = directory.resolve("Movies.txt");
+        Files.writeString(file, "Old,1/5\n");
+    }
+
+    @Test
+    void replaysTheJournalAfterARestart() {
+        try (MovieDatabase db = new MovieDatabase(file.toString())) {
+            db.addMovie(new Movie("New", "2"));
+        }
+        assertEquals(List.of("Old", "New"), titles());
+    }
+
+    @Test
+    void dropsATornLastLineOfTheJournal() throws IOException {
+        try (MovieDatabase db = new MovieDatabase(file.toString())) {
+            db.addMovie(new Movie("New", "2"));
+        }
+        append(sibling(".journal"), "Torn movie,3");
+
+        try (MovieDatabase db = new MovieDatabase(file.toString())) {
+            assertEquals(List.of("Old", "New"), titles(db));
+            db.addMovie(new Movie("Newer", "4"));
+        }
+        assertEquals(List.of("Old", "New", "Newer"), titles());
+    }
+
+    @Test
+    void finishesACompactionWhoseNewFileWasComplete() throws IOException {
+        Files.writeString(sibling(".compacted"), "Old,1/5\nNew,2/5\n");
+        Files.writeString(sibling(".journal.old"), "New,2/5\n");
+        Files.writeString(sibling(".journal"), "Newer,3/5\n");
+
+        assertEquals(List.of("Old", "New", "Newer"), titles());
+        assertEquals(List.of("Old,1/5", "New,2/5"), Files.readAllLines(file));
+        assertFalse(Files.exists(sibling(".compacted")));
+        assertFalse(Files.exists(sibling(".journal.old")));
+    }
+
+    @Test
+    void redoesACompactionThatStoppedBeforeItsNewFileWasComplete() throws IOException {
+        Files.writeString(sibling(".tmp"), "Old,1/5\nNe");
+        Files.writeString(sibling(".journal.old"), "New,2/5\nTorn");
+        Files.writeString(sibling(".journal"), "Newer,3/5\n");
+
+        assertEquals(List.of("Old", "New", "Newer"), titles());
+        assertEquals(List.of("Old,1/5", "New,2/5"), Files.readAllLines(file));
+        assertFalse(Files.exists(sibling(".tmp")));
+        assertFalse(Files.exists(sibling(".journal.old")));
+    }
+
+    @Test
+    void keepsTheMoviesOfACompactionAfterARestart() {
+        try (MovieDatabase db = new MovieDatabase(file.toString())) {
+            db.addMovie(new Movie("New", "2"));
+            db.compact();
+            db.addMovie(new Movie("Newer", "3"));
+        }
+        assertEquals(List.of("Old", "New", "Newer"), titles());
+    }
+
+    private List<String> titles() {
+        try (MovieDatabase db = new MovieDatabase(file.toString())) {
+            return titles(db);
+        }
+    }
+
+    private static List<String> titles(MovieDatabase db) {
+        return db.searchByTitle("").stream().map(Movie::getTitle).collect(Collectors.toList());
+    }
+
+    private Path sibling(String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    private static void append(Path path, String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}